@@ -0,0 +1,469 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/** Performance harness for the gitlet commands and a few of the helpers
+ *  they rest on.  Each benchmark gets a freshly built synthetic
+ *  repository, runs some untimed warmup iterations, then times the
+ *  measured ones and reports microseconds per operation.  Work that only
+ *  prepares an iteration, such as modifying the files that an add will
+ *  stage, is done outside the timed region.  Commands run in this JVM, as
+ *  in batch mode or under a daemon, so the figures leave out JVM startup.
+ *  Unless --warm is given, every in-memory cache is emptied before each
+ *  timed iteration, so that a command reads the repository as a separate
+ *  gitlet invocation would; with --warm, the caches carry over from one
+ *  iteration to the next, as under a daemon.
+ *
+ *  Since gitlet works on the current directory, the harness must be run
+ *  from an empty scratch directory, which it fills and empties as it
+ *  goes; "make bench" arranges that.  Usage:
+ *  <pre>
+ *  java gitlet.Benchmark [--files N] [--commits N] [--branches N]
+ *                        [--size BYTES] [--warmup N] [--iterations N]
+ *                        [--warm] [BENCHMARK ...]</pre>
+ *  With no BENCHMARK named, all of them are run.
+ *  @author Tracy
+ */
+public class Benchmark {
+
+    /** File marking a directory as a scratch directory of the harness. */
+    private static final File MARKER = new File(".gitlet-benchmark");
+
+    /** Operations per iteration of the helper benchmarks, which are too
+     *  fast to time one at a time. */
+    private static final int MICRO_OPS = 1000;
+
+    /** Output stream that discards everything. */
+    private static final PrintStream DISCARD =
+        new PrintStream(OutputStream.nullOutputStream());
+
+    /** One benchmark. */
+    private abstract static class Case {
+        /** Prepares the repository once, before any iteration. */
+        void prepare() throws IOException {
+        }
+
+        /** Prepares one iteration, untimed. */
+        void setup() throws IOException {
+        }
+
+        /** Runs one timed iteration. */
+        abstract void run() throws IOException;
+
+        /** returns the number of operations in one iteration. */
+        int ops() {
+            return 1;
+        }
+    }
+
+    /** Number of files in the synthetic repository. */
+    private int _files = 1000;
+    /** Number of commits on master. */
+    private int _commits = 20;
+    /** Number of extra branches. */
+    private int _branches = 4;
+    /** Size of each file in bytes. */
+    private int _size = 1024;
+    /** Number of untimed iterations. */
+    private int _warmup = 3;
+    /** Number of timed iterations. */
+    private int _iterations = 10;
+    /** True iff caches are kept from one iteration to the next. */
+    private boolean _warm;
+    /** Source of file contents and of the files to modify. */
+    private Random _random = new Random(61);
+    /** Paths of the files of the repository. */
+    private List<String> _paths = new ArrayList<>();
+    /** Number of iterations so far of the current benchmark. */
+    private int _count;
+
+    /** Runs the benchmarks chosen by ARGS; see the class comment. */
+    public static void main(String... args) throws IOException {
+        Benchmark bench = new Benchmark();
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < args.length; i += 1) {
+            if (!args[i].startsWith("--")) {
+                names.add(args[i]);
+                continue;
+            }
+            if (args[i].equals("--warm")) {
+                bench._warm = true;
+                continue;
+            }
+            if (i + 1 == args.length) {
+                usage();
+            }
+            int value = Integer.parseInt(args[i + 1]);
+            switch (args[i]) {
+            case "--files":
+                bench._files = value;
+                break;
+            case "--commits":
+                bench._commits = value;
+                break;
+            case "--branches":
+                bench._branches = value;
+                break;
+            case "--size":
+                bench._size = value;
+                break;
+            case "--warmup":
+                bench._warmup = value;
+                break;
+            case "--iterations":
+                bench._iterations = value;
+                break;
+            default:
+                usage();
+            }
+            i += 1;
+        }
+        String[] here = new File(".").list();
+        if (here.length > 1 || here.length == 1 && !MARKER.exists()) {
+            System.err.println("Run from an empty scratch directory.");
+            System.exit(1);
+        }
+        MARKER.createNewFile();
+        bench.runAll(names);
+        clean();
+        MARKER.delete();
+    }
+
+    /** Reports the correct usage and exits. */
+    private static void usage() {
+        System.err.println("Usage: java gitlet.Benchmark [--files N] "
+                + "[--commits N] [--branches N] [--size BYTES] "
+                + "[--warmup N] [--iterations N] [--warm] [BENCHMARK ...]");
+        System.exit(1);
+    }
+
+    /** Runs the benchmarks named in NAMES, or all of them if it is
+     *  empty, and prints a line of results for each. */
+    private void runAll(List<String> names) throws IOException {
+        Map<String, Case> cases = cases();
+        for (String name : names) {
+            if (!cases.containsKey(name)) {
+                System.err.println("No benchmark named " + name
+                        + "; choose from " + cases.keySet());
+                System.exit(1);
+            }
+        }
+        System.out.printf("%d files of %d bytes, %d commits, %d branches, "
+                + "%s caches%n", _files, _size, _commits, _branches,
+                _warm ? "warm" : "cold");
+        System.out.printf("%-12s %8s %12s %12s %12s%n",
+                "benchmark", "ops", "mean us/op", "min us/op", "max us/op");
+        for (Map.Entry<String, Case> entry : cases.entrySet()) {
+            if (names.isEmpty() || names.contains(entry.getKey())) {
+                measure(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /** Times CASE, named NAME, in a new repository and prints the
+     *  results.  Unless _warm, caches are emptied after each iteration
+     *  is prepared. */
+    private void measure(String name, Case bench) throws IOException {
+        clean();
+        build();
+        bench.prepare();
+        _count = 0;
+        double sum = 0, min = Double.MAX_VALUE, max = 0;
+        for (int i = 0; i < _warmup + _iterations; i += 1) {
+            bench.setup();
+            if (!_warm) {
+                Cache.clear();
+            }
+            PrintStream stdout = System.out;
+            System.setOut(DISCARD);
+            long start = System.nanoTime();
+            try {
+                bench.run();
+            } finally {
+                System.setOut(stdout);
+            }
+            double time = (System.nanoTime() - start) / 1e3 / bench.ops();
+            _count += 1;
+            if (i >= _warmup) {
+                sum += time;
+                min = Math.min(min, time);
+                max = Math.max(max, time);
+            }
+        }
+        System.out.printf("%-12s %8d %12.1f %12.1f %12.1f%n", name,
+                _iterations * bench.ops(), sum / _iterations, min, max);
+    }
+
+    /** returns the benchmarks by name, in the order they are run. */
+    private Map<String, Case> cases() {
+        Map<String, Case> cases = new LinkedHashMap<>();
+        cases.put("add", new Case() {
+            private String[] _args;
+
+            @Override
+            void setup() {
+                List<String> args = new ArrayList<>(List.of("add"));
+                args.addAll(modify(Math.max(1, _files / 10)));
+                _args = args.toArray(new String[0]);
+            }
+
+            @Override
+            void run() throws IOException {
+                gitlet(_args);
+            }
+        });
+        cases.put("commit", new Case() {
+            @Override
+            void setup() throws IOException {
+                stage(modify(Math.max(1, _files / 10)));
+            }
+
+            @Override
+            void run() throws IOException {
+                gitlet("commit", "benchmark " + _count);
+            }
+        });
+        cases.put("status", new Case() {
+            @Override
+            void run() throws IOException {
+                gitlet("status");
+            }
+        });
+        cases.put("log", new Case() {
+            @Override
+            void run() throws IOException {
+                gitlet("log");
+            }
+        });
+        cases.put("find", new Case() {
+            @Override
+            void run() throws IOException {
+                gitlet("find", "commit " + _commits / 2);
+            }
+        });
+        cases.put("checkout", new Case() {
+            @Override
+            void prepare() throws IOException {
+                diverge();
+            }
+
+            @Override
+            void run() throws IOException {
+                gitlet("checkout", _count % 2 == 0 ? "topic" : "master");
+            }
+        });
+        cases.put("reset", new Case() {
+            private String[] _ids = new String[2];
+
+            @Override
+            void prepare() {
+                _ids[0] = Branch.headId();
+                _ids[1] = Commit.load(_ids[0]).parent();
+            }
+
+            @Override
+            void run() throws IOException {
+                gitlet("reset", _ids[1 - _count % 2]);
+            }
+        });
+        cases.put("merge", new Case() {
+            private String _base;
+
+            @Override
+            void prepare() throws IOException {
+                diverge();
+                _base = Branch.headId();
+            }
+
+            @Override
+            void setup() throws IOException {
+                gitlet("reset", _base);
+            }
+
+            @Override
+            void run() throws IOException {
+                gitlet("merge", "topic");
+            }
+        });
+        cases.put("split", new Case() {
+            @Override
+            void prepare() throws IOException {
+                diverge();
+            }
+
+            @Override
+            void run() {
+                Main.split("topic");
+            }
+        });
+        cases.putAll(helperCases());
+        return cases;
+    }
+
+    /** returns the benchmarks of helpers, by name. */
+    private Map<String, Case> helperCases() {
+        Map<String, Case> cases = new LinkedHashMap<>();
+        byte[] data = contents();
+        HashMap<String, String> files = new HashMap<>();
+        for (int i = 0; i < _files; i += 1) {
+            files.put(path(i), Utils.sha1(Integer.toString(i)));
+        }
+        File object = new File("benchmark-object");
+        cases.put("sha1", new Case() {
+            @Override
+            void run() {
+                for (int i = 0; i < MICRO_OPS; i += 1) {
+                    Utils.sha1(data);
+                }
+            }
+
+            @Override
+            int ops() {
+                return MICRO_OPS;
+            }
+        });
+        cases.put("serialize", new Case() {
+            @Override
+            void run() {
+                for (int i = 0; i < MICRO_OPS; i += 1) {
+                    Utils.serialize(files);
+                }
+            }
+
+            @Override
+            int ops() {
+                return MICRO_OPS;
+            }
+        });
+        cases.put("readObject", new Case() {
+            @Override
+            void prepare() {
+                Utils.writeObject(object, files);
+            }
+
+            @Override
+            void run() {
+                for (int i = 0; i < MICRO_OPS; i += 1) {
+                    Utils.readObject(object, HashMap.class);
+                }
+            }
+
+            @Override
+            int ops() {
+                return MICRO_OPS;
+            }
+        });
+        return cases;
+    }
+
+    /** Builds the synthetic repository: _commits commits on master, the
+     *  first adding all _files files and each later one changing a tenth
+     *  of them, and _branches branches at the last commit. */
+    private void build() throws IOException {
+        gitlet("init");
+        _paths.clear();
+        for (int i = 0; i < _files; i += 1) {
+            _paths.add(path(i));
+            WorkTree.write(path(i), contents());
+        }
+        stage(_paths);
+        gitlet("commit", "commit 0");
+        for (int c = 1; c < _commits; c += 1) {
+            stage(modify(Math.max(1, _files / 10)));
+            gitlet("commit", "commit " + c);
+        }
+        for (int b = 0; b < _branches; b += 1) {
+            gitlet("branch", "branch-" + b);
+        }
+    }
+
+    /** Adds a branch topic and a commit on each of it and master that
+     *  changes a tenth of the files, leaving master checked out. */
+    private void diverge() throws IOException {
+        gitlet("branch", "topic");
+        gitlet("checkout", "topic");
+        stage(modify(Math.max(1, _files / 10)));
+        gitlet("commit", "topic");
+        gitlet("checkout", "master");
+        stage(modify(Math.max(1, _files / 10)));
+        gitlet("commit", "master");
+    }
+
+    /** returns the path of file number I. */
+    private static String path(int i) {
+        return String.format("dir%d/sub%d/file%d.txt", i % 16, i % 7, i);
+    }
+
+    /** returns _size bytes of random lines of text. */
+    private byte[] contents() {
+        byte[] data = new byte[_size];
+        for (int i = 0; i < data.length; i += 1) {
+            data[i] = i % 60 == 59 ? (byte) '\n'
+                : (byte) ('a' + _random.nextInt(26));
+        }
+        return data;
+    }
+
+    /** Gives N distinct random files new contents.
+     * @return their paths
+     */
+    private List<String> modify(int n) {
+        List<String> paths = new ArrayList<>(_paths);
+        List<String> chosen = new ArrayList<>();
+        for (int i = 0; i < n && !paths.isEmpty(); i += 1) {
+            String path = paths.remove(_random.nextInt(paths.size()));
+            WorkTree.write(path, contents());
+            chosen.add(path);
+        }
+        return chosen;
+    }
+
+    /** Stages the files in PATHS. */
+    private static void stage(List<String> paths) throws IOException {
+        List<String> args = new ArrayList<>(List.of("add"));
+        args.addAll(paths);
+        gitlet(args.toArray(new String[0]));
+    }
+
+    /** Runs gitlet command ARGS, discarding its output.  Fails if the
+     *  command reports an error, since benchmarks of failing commands
+     *  would measure nothing. */
+    private static void gitlet(String... args) throws IOException {
+        PrintStream stdout = System.out;
+        System.setOut(DISCARD);
+        try {
+            Main.run(args);
+        } finally {
+            System.setOut(stdout);
+        }
+    }
+
+    /** Deletes everything in the working directory except MARKER. */
+    private static void clean() {
+        for (File file : new File(".").listFiles()) {
+            if (!file.getName().equals(MARKER.getName())) {
+                delete(file);
+            }
+        }
+    }
+
+    /** Deletes FILE and, if it is a directory, everything in it. */
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
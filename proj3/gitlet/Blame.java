@@ -0,0 +1,169 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+/** Line attribution for the blame command.  Each line of a file in the
+ *  head commit is attributed to the commit that last changed it, found by
+ *  walking first parents through the commit graph.  Commits whose
+ *  changed-path filters rule the file out are passed over without being
+ *  read, and only commits that changed the file are diffed.  At each step
+ *  only the lines still unattributed are carried back, so the walk stops
+ *  as soon as every line has an owner.
+ *
+ *  Results are cached in .gitlet/blame, one file per blob id and path,
+ *  holding the commit that introduced that blob at that path followed by
+ *  the owner of each line.  A cached result is used for any later walk
+ *  that reaches the same blob introduced by the same commit, so blaming
+ *  a file again, even after new commits change it, only diffs the
+ *  versions newer than the last blame.
+ *  @author Tracy
+ */
+class Blame {
+
+    /** Folder holding cached attributions. */
+    static final File BLAME_FOLDER = Utils.join(".gitlet", "blame");
+
+    /** Format of the dates shown. */
+    private static final String DATE_PATTERN = "yyyy-MM-dd HH:mm:ss Z";
+    /** Number of digits of each commit id shown. */
+    private static final int ABBREV = 7;
+
+    /** Writes to OUT each line of file PATH in the head commit, preceded
+     *  by its owner's abbreviated id and date and its line number.  Exits
+     *  if the head commit has no file PATH. */
+    static void blame(String path, OutputStream out) throws IOException {
+        String head = Branch.headId();
+        String blob = Tree.blob(Commit.load(head).tree(), path);
+        if (blob == null) {
+            Main.exit("File does not exist in that commit.");
+        }
+        Diff.Lines lines = new Diff.Lines(Blob.read(blob));
+        String[] owners = attribute(head, path, blob, lines);
+        HashMap<String, String> dates = new HashMap<>();
+        String width = "%" + Integer.toString(lines.size()).length() + "d";
+        for (int i = 0; i < lines.size(); i += 1) {
+            String date = dates.computeIfAbsent(owners[i],
+                id -> Commit.load(id).time(DATE_PATTERN));
+            out.write(String.format("%s (%s " + width + ") ",
+                    owners[i].substring(0, ABBREV), date, i + 1)
+                    .getBytes(StandardCharsets.UTF_8));
+            lines.write(out, i, i + 1);
+            if (!lines.terminated(i)) {
+                out.write('\n');
+            }
+        }
+    }
+
+    /** returns the owner of each of LINES, the contents of BLOB, which is
+     *  file PATH in the commit with id HEAD, and caches the result. */
+    private static String[] attribute(String head, String path,
+                                      String blob, Diff.Lines lines) {
+        Trace.Phase phase = Trace.phase("blame");
+        try (phase) {
+            CommitGraph graph = CommitGraph.load();
+            String[] owners = new String[lines.size()];
+            int[] at = new int[owners.length];
+            int[] line = new int[owners.length];
+            for (int i = 0; i < owners.length; i += 1) {
+                at[i] = line[i] = i;
+            }
+            int left = owners.length;
+            if (left == 0) {
+                return owners;
+            }
+            String headBlob = blob, commit = head, introduced = null;
+            while (left > 0) {
+                String parent = graph.parent(commit), parentBlob = null;
+                while (parent != null) {
+                    if (graph.mayHaveChanged(commit, path)) {
+                        parentBlob = Tree.blob(Commit.load(parent).tree(),
+                                path);
+                        if (!blob.equals(parentBlob)) {
+                            break;
+                        }
+                    }
+                    commit = parent;
+                    parent = graph.parent(commit);
+                    parentBlob = null;
+                }
+                if (introduced == null) {
+                    introduced = commit;
+                }
+                String[] cached = load(blob, path, commit);
+                if (cached != null && commit.equals(introduced)) {
+                    return cached;
+                } else if (cached != null || parentBlob == null) {
+                    for (int i = 0; i < left; i += 1) {
+                        owners[line[i]] = cached == null ? commit
+                            : cached[at[i]];
+                    }
+                    break;
+                }
+                Diff.Lines older = new Diff.Lines(Blob.read(parentBlob));
+                int[][] ids = Diff.ids(older, lines);
+                int kept = 0, delta = 0, i = 0;
+                for (Diff.Edit e : Diff.diff(ids[0], ids[1])) {
+                    for (; i < left && at[i] < e._bStart; i += 1) {
+                        at[kept] = at[i] + delta;
+                        line[kept] = line[i];
+                        kept += 1;
+                    }
+                    for (; i < left && at[i] < e._bEnd; i += 1) {
+                        owners[line[i]] = commit;
+                    }
+                    delta = e._aEnd - e._bEnd;
+                }
+                for (; i < left; i += 1) {
+                    at[kept] = at[i] + delta;
+                    line[kept] = line[i];
+                    kept += 1;
+                }
+                left = kept;
+                lines = older;
+                blob = parentBlob;
+                commit = parent;
+            }
+            save(headBlob, path, introduced, owners);
+            return owners;
+        }
+    }
+
+    /** returns the file caching the attribution of BLOB as file PATH. */
+    private static File cacheFile(String blob, String path) {
+        return Utils.join(BLAME_FOLDER, Utils.sha1(blob, path));
+    }
+
+    /** returns the cached owners of the lines of BLOB as file PATH, if
+     *  the cached result is for BLOB as introduced by the commit with id
+     *  INTRODUCED, and otherwise null. */
+    private static String[] load(String blob, String path,
+                                 String introduced) {
+        File file = cacheFile(blob, path);
+        String[] cached = null;
+        if (file.exists()) {
+            String[] ids = Utils.readContentsAsString(file).split("\n");
+            if (ids[0].equals(introduced)) {
+                cached = new String[ids.length - 1];
+                System.arraycopy(ids, 1, cached, 0, cached.length);
+            }
+        }
+        Trace.cache(cached != null);
+        return cached;
+    }
+
+    /** Caches OWNERS as the owners of the lines of BLOB, introduced as
+     *  file PATH by the commit with id INTRODUCED. */
+    private static void save(String blob, String path, String introduced,
+                             String[] owners) {
+        StringBuilder out = new StringBuilder(introduced).append('\n');
+        for (String owner : owners) {
+            out.append(owner).append('\n');
+        }
+        BLAME_FOLDER.mkdir();
+        Utils.writeContents(cacheFile(blob, path), out.toString());
+    }
+}
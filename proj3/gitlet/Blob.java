@@ -0,0 +1,124 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+
+/** Content-addressed store for file contents.  Each blob lives in
+ *  .gitlet/objects under the SHA-1 of its contents, so a given version
+ *  of a file is stored once no matter how many commits track it.
+ *  Contents are handled as raw bytes, so binary files round-trip
+ *  unchanged.
+ *  @author Tracy
+ */
+public class Blob {
+
+    /** File referring to the objects folder in .gitlet. */
+    static final File OBJECTS_FOLDER = Utils.join(".gitlet", "objects");
+
+    /** Largest blob that is kept in memory once read. */
+    private static final int MAX_CACHED = 1 << 16;
+
+    /** Recently read small blobs, by id. */
+    private static final Map<String, byte[]> READ = Cache.lru(1024);
+
+    /** returns the id that CONTENTS is stored under. */
+    public static String id(byte[] contents) {
+        return Utils.sha1(contents);
+    }
+
+    /** returns whether the blob with id ID is in the object store. */
+    public static boolean exists(String id) {
+        return Utils.join(OBJECTS_FOLDER, id).exists() || Pack.contains(id);
+    }
+
+    /** Stores CONTENTS in the object store unless an identical blob is
+     *  already there.
+     * @return the blob id
+     */
+    public static String save(byte[] contents) {
+        String id = id(contents);
+        if (!exists(id)) {
+            Utils.writeContents(Utils.join(OBJECTS_FOLDER, id), contents);
+        }
+        return id;
+    }
+
+    /** Stores the contents of FILE in the object store unless an
+     *  identical blob is already there.  FILE is read once, being hashed
+     *  as it is copied to a temporary file, which is then either moved
+     *  into place atomically or dropped.  If HASHFIRST, as when FILE may
+     *  hold contents that are already stored, FILE is hashed before
+     *  anything is copied instead, so such contents cost one read and no
+     *  writes, and new ones two reads.  Memory use does not depend on the
+     *  size of FILE, and concurrent saves of the same contents are safe.
+     * @return the blob id
+     */
+    public static String save(File file, boolean hashFirst)
+            throws IOException {
+        if (hashFirst) {
+            String id = Utils.sha1(file);
+            if (exists(id)) {
+                return id;
+            }
+        }
+        File tmp = File.createTempFile("blob", ".tmp", OBJECTS_FOLDER);
+        try {
+            String id = Utils.copyAndHash(file, tmp);
+            if (!exists(id)) {
+                Files.move(tmp.toPath(),
+                        Utils.join(OBJECTS_FOLDER, id).toPath(),
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            }
+            return id;
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    /** Writes the contents of the blob with id ID to FILE, creating or
+     *  replacing it.  A loose blob is copied without passing through the
+     *  JVM's memory; a packed one is inflated as it is written, so only
+     *  a small blob stored as a delta is ever held whole. */
+    public static void copyTo(String id, File file) {
+        File blob = Utils.join(OBJECTS_FOLDER, id);
+        if (blob.exists()) {
+            Utils.copy(blob, file);
+            return;
+        }
+        try (InputStream in = Pack.open(id)) {
+            Trace.opened();
+            Trace.written(Files.copy(in, file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** returns the contents of the blob with id ID, loose or packed.
+     *  The result must not be modified. */
+    public static byte[] read(String id) {
+        byte[] contents = READ.get(id);
+        Trace.cache(contents != null);
+        if (contents != null) {
+            return contents;
+        }
+        File blob = Utils.join(OBJECTS_FOLDER, id);
+        if (blob.exists()) {
+            contents = Utils.readContents(blob);
+        } else {
+            contents = Pack.read(id);
+            if (contents == null) {
+                throw new IllegalArgumentException("no such blob: " + id);
+            }
+        }
+        if (contents.length <= MAX_CACHED) {
+            READ.put(id, contents);
+        }
+        return contents;
+    }
+}
@@ -0,0 +1,64 @@
+package gitlet;
+
+import java.io.File;
+import java.util.List;
+
+/** Branch references.  Each branch is a tiny file in .gitlet/branches
+ *  holding the id of the commit at its tip, and .gitlet/HEAD holds the
+ *  name of the current branch, so reading or moving a branch never
+ *  touches a commit's file map.
+ *  @author Tracy
+ */
+public class Branch {
+
+    /** File referring to the branches folder in .gitlet. */
+    static final File BRANCH_FOLDER = new File(".gitlet/branches");
+    /** File naming the current branch. */
+    static final File HEAD = Utils.join(".gitlet", "HEAD");
+
+    /** returns whether a branch named NAME exists. */
+    public static boolean exists(String name) {
+        return Utils.join(BRANCH_FOLDER, name).isFile();
+    }
+
+    /** returns the names of all branches in lexicographic order. */
+    public static List<String> names() {
+        return Utils.plainFilenamesIn(BRANCH_FOLDER);
+    }
+
+    /** returns the commit id at the tip of branch NAME. */
+    public static String id(String name) {
+        return Utils.readContentsAsString(Utils.join(BRANCH_FOLDER, name));
+    }
+
+    /** Points branch NAME at the commit with id ID, creating the branch
+     *  if needed. */
+    public static void setId(String name, String id) {
+        Utils.writeContents(Utils.join(BRANCH_FOLDER, name), id);
+    }
+
+    /** Deletes branch NAME. */
+    public static void delete(String name) {
+        Utils.join(BRANCH_FOLDER, name).delete();
+    }
+
+    /** returns the name of the current branch. */
+    public static String current() {
+        return Utils.readContentsAsString(HEAD);
+    }
+
+    /** Makes NAME the current branch. */
+    public static void setCurrent(String name) {
+        Utils.writeContents(HEAD, name);
+    }
+
+    /** returns the commit id at the tip of the current branch. */
+    public static String headId() {
+        return id(current());
+    }
+
+    /** returns the commit at the tip of the current branch. */
+    public static Commit headCommit() {
+        return Commit.load(headId());
+    }
+}
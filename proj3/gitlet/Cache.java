@@ -0,0 +1,69 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/** Helpers for the in-memory caches of repository state.  Within one
+ *  command they save rereading objects; in a daemon they also carry over
+ *  from one command to the next.  Objects are named by their contents,
+ *  so cached objects never go stale.  Cached copies of files that change,
+ *  such as the index and the commit graph, are kept together with the
+ *  stamp of the file they were read from, and are dropped as soon as the
+ *  file's stamp changes, whichever process changed it.
+ *  @author Tracy
+ */
+class Cache {
+
+    /** Actions that each empty one cache, run by clear. */
+    private static final List<Runnable> CLEARERS =
+        new CopyOnWriteArrayList<>();
+
+    /** returns a thread-safe map that holds at most CAPACITY entries,
+     *  dropping the least recently used entry when it is full. */
+    static <K, V> Map<K, V> lru(int capacity) {
+        Map<K, V> map = Collections.synchronizedMap(
+            new LinkedHashMap<K, V>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, V> e) {
+                    return size() > capacity;
+                }
+            });
+        onClear(map::clear);
+        return map;
+    }
+
+    /** Has clear run ACTION, which empties a cache. */
+    static void onClear(Runnable action) {
+        CLEARERS.add(action);
+    }
+
+    /** Empties every cache, so that the next command reads everything
+     *  from the repository, as a fresh process would. */
+    static void clear() {
+        for (Runnable action : CLEARERS) {
+            action.run();
+        }
+    }
+
+    /** returns the stamp of FILE: a value that compares equal for two
+     *  calls only if FILE was not replaced, modified or deleted between
+     *  them.  Returns null if FILE does not exist. */
+    static Object stamp(File file) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file.toPath(),
+                    BasicFileAttributes.class);
+            return Arrays.asList(attrs.fileKey(),
+                    attrs.lastModifiedTime(), attrs.size());
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+}
@@ -1,67 +1,228 @@
 package gitlet;
 
 import java.util.HashMap;
+import java.util.Map;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.Serializable;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
 
-/** Commit class with Commit constructor.
+/** Commit class with Commit constructor.  A commit is stored in its
+ *  canonical encoding, which is also what its id hashes:
+ *  <pre>
+ *  parent ID          (zero, one or two lines)
+ *  time SECONDS ZONE  (seconds since the epoch, zone as +hhmm)
+ *  generation N
+ *  tree TREEID        (the tree of the working directory)
+ *
+ *  MESSAGE</pre>
+ *  Every field is written in a fixed order, so equal commits always
+ *  get equal ids.
  * @author Tracy
  */
-public class Commit implements Serializable {
+public class Commit {
 
     /** File referring to the commits folder in .gitlet. */
     static final File COMMIT_FOLDER = new File(".gitlet/commits");
-    /** File referring to the global-log file in .gitlet. */
+    /** File referring to the global-log file in .gitlet.  It is an
+     *  append-only journal: each record is a log entry followed by its
+     *  length as a 4-byte int, so it can be read newest first. */
     static final File GLOBAL_LOG = Utils.join(".gitlet", "global-log");
 
+    /** Recently loaded commits, by id. */
+    private static final Map<String, Commit> LOADED = Cache.lru(4096);
+
+    /** Format of commit timestamps. */
+    static final String DATE_PATTERN = "E MMM dd HH:mm:ss yyyy Z";
+
     /** String to store message. */
     private String _message;
-    /** String to store timestamp. */
-    private String _timestamp;
-    /** HashMap to store files. */
+    /** Seconds since the epoch at which the commit was made. */
+    private long _timestamp;
+    /** Time zone of the timestamp, as +hhmm or -hhmm. */
+    private String _zone;
+    /** HashMap from file path to the blob id of its contents, or null
+     *  until it is first read from the tree. */
     private HashMap<String, String> _files;
+    /** Id of the tree of the working directory. */
+    private String _tree;
     /** String to store id. */
     private String _id;
     /** String to store parent. */
     private String _parent;
     /** String to store second parent. */
     private String _parent2;
+    /** Generation number: one more than the largest of its parents'. */
+    private int _generation;
 
     /** Commit constructor.
      * @param f files
      * @param m message
      * @param p parent
      * @param p2 parent2
-     * @param t timestamp
+     * @param t timestamp in seconds since the epoch
+     * @param z time zone of the timestamp, as +hhmm or -hhmm
      * */
-    public Commit(String m, String t, HashMap<String,
+    public Commit(String m, long t, String z, HashMap<String,
             String> f, String p, String p2) {
         _message = m;
         _timestamp = t;
+        _zone = z;
         _files = f;
+        _tree = Tree.write(f);
         _parent = p;
         _parent2 = p2;
-        byte[] c = Utils.serialize(this);
-        _id = Utils.sha1(c);
+        _generation = 1 + Math.max(generationOf(p), generationOf(p2));
+        _id = Utils.sha1(encode());
+    }
+
+    /** An empty commit, to be filled in by decode. */
+    private Commit() {
+    }
+
+    /** returns the generation number of the commit with id ID, or 0 if
+     *  ID is null. */
+    private static int generationOf(String id) {
+        return id == null ? 0 : load(id).generation();
+    }
+
+    /** returns the commit with id ID from the commits folder, or from
+     *  a pack if it is not loose. */
+    public static Commit load(String id) {
+        Commit loaded = LOADED.get(id);
+        Trace.cache(loaded != null);
+        if (loaded != null) {
+            return loaded;
+        }
+        File commit = Utils.join(COMMIT_FOLDER, id);
+        try (InputStream in = commit.exists()
+                 ? new BufferedInputStream(new FileInputStream(commit))
+                 : new ByteArrayInputStream(read(id))) {
+            if (commit.exists()) {
+                Trace.opened();
+                Trace.read(commit.length());
+            }
+            loaded = decode(id, in);
+            LOADED.put(id, loaded);
+            return loaded;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** returns the encoding of the commit with id ID, loose or packed. */
+    static byte[] read(String id) {
+        File commit = Utils.join(COMMIT_FOLDER, id);
+        if (commit.exists()) {
+            return Utils.readContents(commit);
+        }
+        byte[] packed = Pack.read(id);
+        if (packed == null) {
+            throw new IllegalArgumentException("no such commit: " + id);
+        }
+        return packed;
+    }
+
+    /** returns the canonical encoding of this commit. */
+    private byte[] encode() {
+        StringBuilder out = new StringBuilder();
+        if (_parent != null) {
+            out.append("parent ").append(_parent).append('\n');
+        }
+        if (_parent2 != null) {
+            out.append("parent ").append(_parent2).append('\n');
+        }
+        out.append("time ").append(_timestamp).append(' ')
+            .append(_zone).append('\n');
+        out.append("generation ").append(_generation).append('\n');
+        out.append("tree ").append(_tree).append('\n');
+        out.append('\n').append(_message);
+        return out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** returns the commit with id ID decoded from its canonical encoding,
+     *  which is read from IN in a single pass. */
+    static Commit decode(String id, InputStream in) throws IOException {
+        Commit commit = new Commit();
+        commit._id = id;
+        for (String line = readLine(in); !line.isEmpty();
+             line = readLine(in)) {
+            int space = line.indexOf(' ');
+            String value = line.substring(space + 1);
+            switch (line.substring(0, space)) {
+            case "parent":
+                if (commit._parent == null) {
+                    commit._parent = value;
+                } else {
+                    commit._parent2 = value;
+                }
+                break;
+            case "time":
+                space = value.indexOf(' ');
+                commit._timestamp = Long.parseLong(value.substring(0, space));
+                commit._zone = value.substring(space + 1);
+                break;
+            case "generation":
+                commit._generation = Integer.parseInt(value);
+                break;
+            case "tree":
+                commit._tree = value;
+                break;
+            default:
+                throw new IOException("malformed commit " + id);
+            }
+        }
+        commit._message = new String(in.readAllBytes(),
+                StandardCharsets.UTF_8);
+        Trace.deserialized();
+        return commit;
+    }
+
+    /** returns the next line from IN, without its terminator.  Throws
+     *  IOException if IN ends first. */
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        for (int c = in.read(); c != '\n'; c = in.read()) {
+            if (c == -1) {
+                throw new IOException("truncated commit");
+            }
+            line.write(c);
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    /** returns whether the commit with id ID is stored, loose or
+     *  packed. */
+    static boolean exists(String id) {
+        return Utils.join(COMMIT_FOLDER, id).exists() || Pack.contains(id);
     }
 
-    /** Saves this commit to commits folder. */
+    /** Saves this commit to commits folder, unless an identical commit
+     *  is already stored, so that the global-log journal records each
+     *  commit once. */
     public void save() throws IOException {
+        if (exists(_id)) {
+            return;
+        }
         File commit = Utils.join(COMMIT_FOLDER, this._id);
-        commit.createNewFile();
-        Utils.writeObject(commit, this);
-        GLOBAL_LOG.createNewFile();
+        Utils.writeContents(commit, encode());
 
-        String old = Utils.readContentsAsString(GLOBAL_LOG);
         String curCommit = String.format("===\ncommit %s\nDate: %s\n%s",
-                _id, _timestamp, _message);
-        if (this._message.equals("initial commit")) {
-            Utils.writeContents(GLOBAL_LOG, curCommit);
-        } else {
-            String total = curCommit + "\n\n" + old;
-            Utils.writeContents(GLOBAL_LOG, total);
-        }
+                _id, time(), _message);
+        byte[] entry = curCommit.getBytes(StandardCharsets.UTF_8);
+        byte[] length = ByteBuffer.allocate(Integer.BYTES)
+                .putInt(entry.length).array();
+        Utils.appendContents(GLOBAL_LOG, entry, length);
+        CommitIndex.add(this);
+        CommitGraph.append(this);
     }
 
     /** returns commit id. */
@@ -69,11 +230,40 @@ public class Commit implements Serializable {
         return _id;
     }
 
-    /** returns time. */
+    /** returns time, formatted in the commit's own time zone. */
     public String time() {
+        return time(DATE_PATTERN);
+    }
+
+    /** returns time, formatted by PATTERN in the commit's own time
+     *  zone. */
+    public String time(String pattern) {
+        SimpleDateFormat format = new SimpleDateFormat(pattern);
+        format.setTimeZone(TimeZone.getTimeZone("GMT" + _zone));
+        return format.format(date());
+    }
+
+    /** returns time as a Date. */
+    public Date date() {
+        return new Date(_timestamp * 1000);
+    }
+
+    /** returns time in seconds since the epoch. */
+    public long timestamp() {
         return _timestamp;
     }
 
+    /** returns this commit's entry in the output of log. */
+    public String logEntry() {
+        if (_parent2 != null) {
+            return String.format("===\ncommit %s\nMerge: %s %s\n"
+                    + "Date: %s\n%s", _id, _parent.substring(0, 7),
+                    _parent2.substring(0, 7), time(), _message);
+        }
+        return String.format("===\ncommit %s\nDate: %s\n%s",
+                _id, time(), _message);
+    }
+
     /** returns message. */
     public String message() {
         return _message;
@@ -89,22 +279,22 @@ public class Commit implements Serializable {
         return _parent2;
     }
 
-    /** returns files stored. */
-    public HashMap<String, String> files() {
-        return _files;
+    /** returns generation number. */
+    public int generation() {
+        return _generation;
     }
 
-    /** sets files of commits to new set of files.
-     * @param files files
-     * */
-    public void setFiles(HashMap<String, String> files) {
-        _files = files;
+    /** returns the id of the tree of the working directory. */
+    public String tree() {
+        return _tree;
     }
 
-    /** sets parent2.
-     * @param p2 parent2
-     * */
-    public void setParent2(String p2) {
-        _parent2 = p2;
+    /** returns map of file paths to blob ids, flattened from the tree
+     *  the first time it is needed. */
+    public HashMap<String, String> files() {
+        if (_files == null) {
+            _files = Tree.files(_tree);
+        }
+        return _files;
     }
 }
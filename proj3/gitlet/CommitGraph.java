@@ -0,0 +1,351 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/** The commit graph, kept in .gitlet/commit-graph.  The file is an
+ *  append-only sequence of fixed-size records, one per commit, holding
+ *  the commit id, both parent ids and the commit's generation number
+ *  (one more than the largest generation of its parents).  Loading it
+ *  produces primitive arrays indexed by position, so ancestry queries
+ *  never have to deserialize a commit.
+ *
+ *  Alongside it, .gitlet/commit-graph-filters holds each commit's
+ *  PathFilter of the paths it changed from its first parent, as records
+ *  of the commit id, the filter's length and the filter.  Commits without
+ *  a record, such as those made before filters were kept, may have
+ *  changed any path.
+ *  @author Tracy
+ */
+public class CommitGraph {
+
+    /** File referring to the commit-graph file in .gitlet. */
+    static final File GRAPH_FILE = Utils.join(".gitlet", "commit-graph");
+    /** File referring to the changed-path filters in .gitlet. */
+    static final File FILTER_FILE =
+        Utils.join(".gitlet", "commit-graph-filters");
+
+    /** Length of a raw SHA-1 hash. */
+    private static final int HASH_BYTES = Utils.UID_LENGTH / 2;
+    /** Length of a record. */
+    private static final int RECORD = 3 * HASH_BYTES + Integer.BYTES;
+
+    /** Flag for commits reachable from the first commit of a query. */
+    private static final int PARENT1 = 1;
+    /** Flag for commits reachable from the second commit of a query. */
+    private static final int PARENT2 = 2;
+    /** Flag for commits below an already-found common ancestor. */
+    private static final int STALE = 4;
+    /** Flag for commits already reported as common ancestors. */
+    private static final int RESULT = 8;
+
+    /** The graph as last loaded, or null. */
+    private static CommitGraph _loaded;
+    /** Stamp of GRAPH_FILE when _loaded was read. */
+    private static Object _loadedStamp;
+
+    static {
+        Cache.onClear(() -> _loaded = null);
+    }
+
+    /** Contents of GRAPH_FILE. */
+    private final ByteBuffer _graph;
+    /** Number of commits. */
+    private final int _count;
+    /** Open-addressed hash table of positions, keyed by the first four
+     *  bytes of each commit's hash.  A slot holds a position plus one, or
+     *  0 if it is empty. */
+    private final int[] _table;
+    /** Position of each commit's first parent, or -1. */
+    private final int[] _parent;
+    /** Position of each commit's second parent, or -1. */
+    private final int[] _parent2;
+    /** Generation number of each commit. */
+    private final int[] _generation;
+    /** Changed-path filter of each commit, or null, read from
+     *  FILTER_FILE on first use. */
+    private byte[][] _filters;
+
+    /** returns the commit graph in GRAPH_FILE, reusing the graph last
+     *  loaded if the file has not changed since. */
+    public static synchronized CommitGraph load() {
+        Object stamp = Cache.stamp(GRAPH_FILE);
+        boolean hit = _loaded != null && _loadedStamp.equals(stamp);
+        Trace.cache(hit);
+        if (!hit) {
+            _loaded = new CommitGraph();
+            _loadedStamp = stamp;
+            Trace.deserialized();
+        }
+        return _loaded;
+    }
+
+    /** Loads the commit graph from GRAPH_FILE.  Commits are looked up by
+     *  their raw hashes in the file's contents, so no id is converted to
+     *  a string until it is returned. */
+    private CommitGraph() {
+        _graph = ByteBuffer.wrap(Utils.readContents(GRAPH_FILE));
+        _count = _graph.capacity() / RECORD;
+        _table = new int[Math.max(Integer.highestOneBit(2 * _count) * 2,
+                                  16)];
+        for (int i = 0; i < _count; i += 1) {
+            int slot = _graph.getInt(i * RECORD) & (_table.length - 1);
+            while (_table[slot] != 0) {
+                slot = (slot + 1) & (_table.length - 1);
+            }
+            _table[slot] = i + 1;
+        }
+        _parent = new int[_count];
+        _parent2 = new int[_count];
+        _generation = new int[_count];
+        for (int i = 0; i < _count; i += 1) {
+            _parent[i] = position(_graph, i * RECORD + HASH_BYTES);
+            _parent2[i] = position(_graph, i * RECORD + 2 * HASH_BYTES);
+            _generation[i] = _graph.getInt(i * RECORD + 3 * HASH_BYTES);
+        }
+    }
+
+    /** returns the changed-path filter of each commit, by position,
+     *  reading FILTER_FILE the first time. */
+    private synchronized byte[][] filters() {
+        if (_filters == null) {
+            _filters = new byte[_count][];
+            if (FILTER_FILE.exists()) {
+                ByteBuffer filters =
+                    ByteBuffer.wrap(Utils.readContents(FILTER_FILE));
+                while (filters.hasRemaining()) {
+                    int pos = find(filters, filters.position());
+                    filters.position(filters.position() + HASH_BYTES);
+                    byte[] filter = new byte[filters.getInt()];
+                    filters.get(filter);
+                    if (pos != -1) {
+                        _filters[pos] = filter;
+                    }
+                }
+            }
+        }
+        return _filters;
+    }
+
+    /** Appends COMMIT's record to the commit graph, after appending its
+     *  changed-path filter, so that a graph that has the commit always
+     *  has its filter. */
+    public static void append(Commit commit) {
+        String parentTree = commit.parent() == null ? null
+            : Commit.load(commit.parent()).tree();
+        byte[] filter = PathFilter.build(
+                Tree.diff(parentTree, commit.tree()).keySet());
+        Utils.appendContents(FILTER_FILE, Utils.fromHex(commit.id()),
+                ByteBuffer.allocate(Integer.BYTES).putInt(filter.length)
+                    .array(), filter);
+        ByteBuffer rec = ByteBuffer.allocate(RECORD);
+        rec.put(Utils.fromHex(commit.id()));
+        for (String parent : new String[] {commit.parent(),
+                                           commit.parent2()}) {
+            if (parent == null) {
+                rec.put(new byte[HASH_BYTES]);
+            } else {
+                rec.put(Utils.fromHex(parent));
+            }
+        }
+        rec.putInt(commit.generation());
+        Utils.appendContents(GRAPH_FILE, rec.array());
+    }
+
+    /** returns the id of the first parent of commit ID, or null if it
+     *  has none. */
+    public String parent(String id) {
+        int p = _parent[position(id)];
+        return p == -1 ? null : id(p);
+    }
+
+    /** returns false if commit ID certainly did not change PATH, a file
+     *  or directory, from its first parent, and true if it may have. */
+    public boolean mayHaveChanged(String id, String path) {
+        byte[] filter = filters()[position(id)];
+        return filter == null || PathFilter.mayContain(filter, path);
+    }
+
+    /** returns the position of commit ID, or -1 if ID is null. */
+    private int position(String id) {
+        if (id == null) {
+            return -1;
+        }
+        int pos = find(ByteBuffer.wrap(Utils.fromHex(id)), 0);
+        if (pos == -1) {
+            throw new IllegalArgumentException("commit not in graph: " + id);
+        }
+        return pos;
+    }
+
+    /** returns the position of the commit whose hash is at byte OFFSET
+     *  of BUF, or -1 if that hash is all zeros, as for a missing
+     *  parent. */
+    private int position(ByteBuffer buf, int offset) {
+        if (isNull(buf, offset)) {
+            return -1;
+        }
+        int pos = find(buf, offset);
+        if (pos == -1) {
+            throw new IllegalArgumentException("commit not in graph: "
+                    + Utils.toHex(hash(buf, offset)));
+        }
+        return pos;
+    }
+
+    /** returns the position of the commit whose hash is at byte OFFSET
+     *  of BUF, or -1 if it is not in the graph. */
+    private int find(ByteBuffer buf, int offset) {
+        int slot = buf.getInt(offset) & (_table.length - 1);
+        for (; _table[slot] != 0; slot = (slot + 1) & (_table.length - 1)) {
+            int pos = _table[slot] - 1;
+            int k = 0;
+            while (k < HASH_BYTES && _graph.get(pos * RECORD + k)
+                       == buf.get(offset + k)) {
+                k += 1;
+            }
+            if (k == HASH_BYTES) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    /** returns the id of the commit at position POS. */
+    private String id(int pos) {
+        return Utils.toHex(hash(_graph, pos * RECORD));
+    }
+
+    /** returns the hash at byte OFFSET of BUF. */
+    private static byte[] hash(ByteBuffer buf, int offset) {
+        byte[] hash = new byte[HASH_BYTES];
+        for (int k = 0; k < HASH_BYTES; k += 1) {
+            hash[k] = buf.get(offset + k);
+        }
+        return hash;
+    }
+
+    /** returns the id of a best common ancestor of the commits with ids
+     *  A and B: a common ancestor that is not an ancestor of any other
+     *  common ancestor.  When there are several, as after criss-cross
+     *  merges, the one with the greatest generation is returned.
+     *  Returns null if A and B share no history. */
+    public String mergeBase(String a, String b) {
+        List<Integer> bases = mergeBases(position(a), position(b));
+        int best = -1;
+        for (int base : bases) {
+            if (best == -1 || _generation[base] > _generation[best]) {
+                best = base;
+            }
+        }
+        return best == -1 ? null : id(best);
+    }
+
+    /** returns the best common ancestors of the commits at positions A
+     *  and B.  Walks down from both commits in order of decreasing
+     *  generation, so no commit is visited after every commit still
+     *  queued is known to lie below a common ancestor. */
+    private List<Integer> mergeBases(int a, int b) {
+        List<Integer> result = new ArrayList<>();
+        if (a == b) {
+            result.add(a);
+            return result;
+        }
+        int[] flags = new int[_count];
+        PriorityQueue<Integer> queue = new PriorityQueue<>((x, y) ->
+            _generation[x] != _generation[y]
+                ? Integer.compare(_generation[y], _generation[x])
+                : Integer.compare(y, x));
+        flags[a] |= PARENT1;
+        flags[b] |= PARENT2;
+        queue.add(a);
+        queue.add(b);
+        while (hasNonStale(queue, flags)) {
+            int c = queue.poll();
+            int f = flags[c] & (PARENT1 | PARENT2 | STALE);
+            if ((f & (PARENT1 | PARENT2)) == (PARENT1 | PARENT2)) {
+                if ((flags[c] & (RESULT | STALE)) == 0) {
+                    flags[c] |= RESULT;
+                    result.add(c);
+                }
+                f |= STALE;
+            }
+            for (int p : new int[] {_parent[c], _parent2[c]}) {
+                if (p != -1 && (flags[p] & f) != f) {
+                    flags[p] |= f;
+                    queue.add(p);
+                }
+            }
+        }
+        return removeRedundant(result);
+    }
+
+    /** returns whether QUEUE holds a commit not marked STALE in FLAGS. */
+    private static boolean hasNonStale(PriorityQueue<Integer> queue,
+                                       int[] flags) {
+        for (int c : queue) {
+            if ((flags[c] & STALE) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** returns the members of CANDIDATES that are not ancestors of other
+     *  members. */
+    private List<Integer> removeRedundant(List<Integer> candidates) {
+        List<Integer> result = new ArrayList<>();
+        for (int c : candidates) {
+            boolean redundant = false;
+            for (int other : candidates) {
+                if (other != c && isAncestor(c, other)) {
+                    redundant = true;
+                    break;
+                }
+            }
+            if (!redundant) {
+                result.add(c);
+            }
+        }
+        return result;
+    }
+
+    /** returns whether the commit at position A is an ancestor of the
+     *  commit at position B.  Only commits with generations above A's
+     *  are explored. */
+    private boolean isAncestor(int a, int b) {
+        boolean[] seen = new boolean[_count];
+        ArrayList<Integer> stack = new ArrayList<>();
+        stack.add(b);
+        while (!stack.isEmpty()) {
+            int c = stack.remove(stack.size() - 1);
+            if (c == a) {
+                return true;
+            }
+            if (seen[c] || _generation[c] <= _generation[a]) {
+                continue;
+            }
+            seen[c] = true;
+            if (_parent[c] != -1) {
+                stack.add(_parent[c]);
+            }
+            if (_parent2[c] != -1) {
+                stack.add(_parent2[c]);
+            }
+        }
+        return false;
+    }
+
+    /** returns whether the hash at byte OFFSET of BUF is all zeros. */
+    private static boolean isNull(ByteBuffer buf, int offset) {
+        for (int k = 0; k < HASH_BYTES; k += 1) {
+            if (buf.get(offset + k) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
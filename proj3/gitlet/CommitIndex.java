@@ -0,0 +1,200 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** Persistent index of commit metadata, kept in .gitlet/commit-index.
+ *  The ids table holds every commit id in sorted order, so abbreviated
+ *  ids resolve by binary search, and the messages table holds sorted
+ *  (message hash, commit id) pairs, so find never has to load a commit.
+ *  New commits are appended to a small pending journal that is merged
+ *  into the tables once it reaches PENDING_LIMIT records.
+ *  @author Tracy
+ */
+public class CommitIndex {
+
+    /** Folder holding the index files. */
+    static final File INDEX_FOLDER = Utils.join(".gitlet", "commit-index");
+    /** Sorted table of commit ids, one per line. */
+    static final File IDS = Utils.join(INDEX_FOLDER, "ids");
+    /** Sorted table of message hashes and commit ids, one pair per line. */
+    static final File MESSAGES = Utils.join(INDEX_FOLDER, "messages");
+    /** Journal of commits not yet merged into the tables. */
+    static final File PENDING = Utils.join(INDEX_FOLDER, "pending");
+
+    /** Length of a record in the ids table. */
+    private static final int ID_RECORD = Utils.UID_LENGTH + 1;
+    /** Length of a record in the messages table and the journal. */
+    private static final int PAIR_RECORD = 2 * Utils.UID_LENGTH + 2;
+    /** Number of journal records that triggers a merge into the tables. */
+    private static final int PENDING_LIMIT = 256;
+
+    /** Records COMMIT in the index. */
+    public static void add(Commit commit) {
+        INDEX_FOLDER.mkdir();
+        Utils.appendContents(PENDING, commit.id() + " "
+                + Utils.sha1(commit.message()) + "\n");
+        if (PENDING.length() >= (long) PENDING_LIMIT * PAIR_RECORD) {
+            compact();
+        }
+    }
+
+    /** returns the ids of all commits whose ids start with PREFIX, in
+     *  sorted order.  At most LIMIT ids are returned. */
+    public static List<String> resolve(String prefix, int limit) {
+        List<String> result = new ArrayList<>();
+        try (RandomAccessFile table = open(IDS)) {
+            if (table != null) {
+                byte[] rec = new byte[ID_RECORD];
+                long n = table.length() / ID_RECORD;
+                for (long i = lowerBound(table, ID_RECORD, prefix);
+                     i < n && result.size() < limit; i += 1) {
+                    table.seek(i * ID_RECORD);
+                    table.readFully(rec);
+                    String id = key(rec, 0);
+                    if (!id.startsWith(prefix)) {
+                        break;
+                    }
+                    result.add(id);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        for (String[] pair : pending()) {
+            if (pair[0].startsWith(prefix) && result.size() < limit) {
+                result.add(pair[0]);
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /** returns the ids of all commits with message MESSAGE. */
+    public static List<String> find(String message) {
+        String hash = Utils.sha1(message);
+        List<String> result = new ArrayList<>();
+        try (RandomAccessFile table = open(MESSAGES)) {
+            if (table != null) {
+                byte[] rec = new byte[PAIR_RECORD];
+                long n = table.length() / PAIR_RECORD;
+                for (long i = lowerBound(table, PAIR_RECORD, hash);
+                     i < n; i += 1) {
+                    table.seek(i * PAIR_RECORD);
+                    table.readFully(rec);
+                    if (!key(rec, 0).equals(hash)) {
+                        break;
+                    }
+                    result.add(key(rec, Utils.UID_LENGTH + 1));
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        for (String[] pair : pending()) {
+            if (pair[1].equals(hash)) {
+                result.add(pair[0]);
+            }
+        }
+        return result;
+    }
+
+    /** Merges the pending journal into the sorted tables. */
+    static void compact() {
+        List<String[]> pending = pending();
+        List<String> ids = new ArrayList<>();
+        List<String> messages = new ArrayList<>();
+        if (IDS.exists()) {
+            ids.addAll(lines(IDS));
+            messages.addAll(lines(MESSAGES));
+        }
+        for (String[] pair : pending) {
+            ids.add(pair[0]);
+            messages.add(pair[1] + " " + pair[0]);
+        }
+        Collections.sort(ids);
+        Collections.sort(messages);
+        replace(IDS, ids);
+        replace(MESSAGES, messages);
+        PENDING.delete();
+    }
+
+    /** returns the (id, message hash) pairs in the pending journal. */
+    private static List<String[]> pending() {
+        List<String[]> result = new ArrayList<>();
+        if (PENDING.exists()) {
+            for (String line : lines(PENDING)) {
+                result.add(line.split(" "));
+            }
+        }
+        return result;
+    }
+
+    /** returns the non-empty lines of FILE. */
+    private static List<String> lines(File file) {
+        List<String> result = new ArrayList<>();
+        for (String line : Utils.readContentsAsString(file).split("\n")) {
+            if (!line.isEmpty()) {
+                result.add(line);
+            }
+        }
+        return result;
+    }
+
+    /** Atomically replaces the contents of FILE with LINES. */
+    private static void replace(File file, List<String> lines) {
+        StringBuilder contents = new StringBuilder();
+        for (String line : lines) {
+            contents.append(line).append('\n');
+        }
+        File tmp = Utils.join(INDEX_FOLDER, file.getName() + ".tmp");
+        Utils.writeContents(tmp, contents.toString());
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** returns FILE opened for reading, or null if it does not exist. */
+    private static RandomAccessFile open(File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        return new RandomAccessFile(file, "r");
+    }
+
+    /** returns the position of the first record of length LENGTH in
+     *  TABLE whose key is not less than KEY. */
+    private static long lowerBound(RandomAccessFile table, int length,
+                                   String key) throws IOException {
+        byte[] rec = new byte[length];
+        long lo = 0, hi = table.length() / length;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            table.seek(mid * length);
+            table.readFully(rec);
+            if (key(rec, 0).compareTo(key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** returns the 40-character key that starts at OFFSET in REC. */
+    private static String key(byte[] rec, int offset) {
+        return new String(rec, offset, Utils.UID_LENGTH,
+                StandardCharsets.US_ASCII);
+    }
+}
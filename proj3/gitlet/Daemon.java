@@ -0,0 +1,155 @@
+package gitlet;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+
+/** A long-running gitlet process that serves the commands of one
+ *  repository, so that they skip JVM startup and find the commit graph,
+ *  the index, commits, trees and small blobs already in memory (see
+ *  Cache).  The daemon listens on the Unix-domain socket
+ *  .gitlet/daemon.sock and runs one command at a time.
+ *
+ *  A request is the client's working directory followed by the command's
+ *  arguments, as an int count and modified-UTF-8 strings.  The reply is
+ *  one status byte, then, if the daemon took the command, everything the
+ *  command printed.  The daemon refuses commands from any directory but
+ *  its own, since commands name files relative to the working directory.
+ *  @author Tracy
+ */
+class Daemon {
+
+    /** File referring to the daemon's socket in .gitlet. */
+    static final File SOCKET = Utils.join(".gitlet", "daemon.sock");
+
+    /** Reply status for a command that the daemon ran. */
+    private static final int RAN = 0;
+    /** Reply status for a command that the client must run itself. */
+    private static final int REFUSED = 1;
+    /** Most arguments that a request may carry. */
+    private static final int MAX_ARGS = 1 << 16;
+
+    /** Runs ARGS in the daemon for this repository and copies its output
+     *  to System.out, if a daemon is running and takes the command.  A
+     *  batch read from the standard input is never forwarded.
+     * @return whether the daemon ran the command
+     */
+    static boolean forward(String[] args) throws IOException {
+        if (args.length == 0 || !SOCKET.exists()
+                || args[0].equals("batch") && args.length == 1) {
+            return false;
+        }
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(
+                    UnixDomainSocketAddress.of(SOCKET.toPath()));
+        } catch (IOException excp) {
+            return false;
+        }
+        try (channel) {
+            DataOutputStream out = new DataOutputStream(
+                    Channels.newOutputStream(channel));
+            out.writeUTF(new File(".").getCanonicalPath());
+            out.writeInt(args.length);
+            for (String arg : args) {
+                out.writeUTF(arg);
+            }
+            out.flush();
+            InputStream in = Channels.newInputStream(channel);
+            if (in.read() != RAN) {
+                return false;
+            }
+            in.transferTo(System.out);
+            System.out.flush();
+            return true;
+        }
+    }
+
+    /** Serves commands for the repository in the working directory until
+     *  a "daemon stop" command arrives.  The socket is gone by the time
+     *  that command returns.  A client that sends a malformed request is
+     *  dropped.  Exits if a daemon is already serving it. */
+    static void serve() throws IOException {
+        if (forward(new String[] {"daemon", "ping"})) {
+            Main.exit("A daemon is already running.");
+        }
+        Files.deleteIfExists(SOCKET.toPath());
+        String root = new File(".").getCanonicalPath();
+        try (ServerSocketChannel server =
+                 ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(SOCKET.toPath()));
+            Runtime.getRuntime().addShutdownHook(new Thread(SOCKET::delete));
+            boolean stopped = false;
+            while (!stopped) {
+                try (SocketChannel client = server.accept()) {
+                    stopped = handle(client, root);
+                    if (stopped) {
+                        SOCKET.delete();
+                    }
+                } catch (IOException | RuntimeException excp) {
+                    continue;
+                }
+            }
+        } finally {
+            SOCKET.delete();
+        }
+    }
+
+    /** Reads one request from CLIENT and runs it if it comes from ROOT,
+     *  the daemon's working directory.  Throws IOException if the request
+     *  has no arguments or more than MAX_ARGS.
+     * @return whether the request stops the daemon
+     */
+    private static boolean handle(SocketChannel client, String root)
+            throws IOException {
+        DataInputStream in = new DataInputStream(
+                Channels.newInputStream(client));
+        String dir = in.readUTF();
+        int count = in.readInt();
+        if (count < 1 || count > MAX_ARGS) {
+            throw new IOException("malformed request");
+        }
+        String[] args = new String[count];
+        for (int i = 0; i < args.length; i += 1) {
+            args[i] = in.readUTF();
+        }
+        PrintStream out = new PrintStream(Channels.newOutputStream(client));
+        if (!dir.equals(root)) {
+            out.write(REFUSED);
+            out.flush();
+            return false;
+        }
+        out.write(RAN);
+        if (args[0].equals("daemon")) {
+            boolean stop = args.length == 2 && args[1].equals("stop");
+            boolean ping = args.length == 2 && args[1].equals("ping");
+            if (args.length == 1) {
+                out.println("A daemon is already running.");
+            } else if (!stop && !ping) {
+                out.println("Incorrect operands.");
+            }
+            out.flush();
+            return stop;
+        }
+        PrintStream stdout = System.out;
+        System.setOut(out);
+        try {
+            Main.execute(args);
+        } catch (IOException | RuntimeException excp) {
+            out.println(excp);
+        } finally {
+            System.setOut(stdout);
+            out.flush();
+        }
+        return false;
+    }
+}
@@ -0,0 +1,117 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+
+/** Binary deltas between versions of an object, used by packs.  A delta
+ *  holds the lengths of its base and result, then a sequence of
+ *  instructions: a byte 0 < N < 128 inserts the N literal bytes that
+ *  follow, and COPY followed by two ints copies a range of the base.
+ *  @author Tracy
+ */
+class Delta {
+
+    /** Instruction byte for a copy from the base. */
+    private static final int COPY = 0x80;
+    /** Longest run of literal bytes in one insert instruction. */
+    private static final int MAX_INSERT = 0x7f;
+    /** Length of the blocks of the base that matches are seeded from. */
+    private static final int BLOCK = 16;
+
+    /** returns a delta that turns BASE into TARGET. */
+    static byte[] create(byte[] base, byte[] target) {
+        HashMap<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            blocks.putIfAbsent(hash(base, i), i);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeInt(out, base.length);
+        writeInt(out, target.length);
+        int insertStart = 0;
+        int i = 0;
+        while (i + BLOCK <= target.length) {
+            Integer start = blocks.get(hash(target, i));
+            int length = start == null ? 0 : match(base, start, target, i);
+            if (length < BLOCK) {
+                i += 1;
+                continue;
+            }
+            int back = 0;
+            while (back < start && i - back > insertStart
+                   && base[start - back - 1] == target[i - back - 1]) {
+                back += 1;
+            }
+            insert(out, target, insertStart, i - back);
+            out.write(COPY);
+            writeInt(out, start - back);
+            writeInt(out, length + back);
+            i += length;
+            insertStart = i;
+        }
+        insert(out, target, insertStart, target.length);
+        return out.toByteArray();
+    }
+
+    /** returns the result of applying DELTA to BASE. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        ByteBuffer in = ByteBuffer.wrap(delta);
+        if (in.getInt() != base.length) {
+            throw new IllegalArgumentException("delta does not fit its base");
+        }
+        byte[] result = new byte[in.getInt()];
+        int pos = 0;
+        while (in.hasRemaining()) {
+            int op = in.get() & 0xff;
+            if (op == COPY) {
+                int start = in.getInt(), length = in.getInt();
+                System.arraycopy(base, start, result, pos, length);
+                pos += length;
+            } else {
+                in.get(result, pos, op);
+                pos += op;
+            }
+        }
+        return result;
+    }
+
+    /** Writes insert instructions for TARGET[START .. END) to OUT. */
+    private static void insert(ByteArrayOutputStream out, byte[] target,
+                               int start, int end) {
+        while (start < end) {
+            int n = Math.min(MAX_INSERT, end - start);
+            out.write(n);
+            out.write(target, start, n);
+            start += n;
+        }
+    }
+
+    /** returns the length of the common run of BASE from BSTART and
+     *  TARGET from TSTART. */
+    private static int match(byte[] base, int bStart,
+                             byte[] target, int tStart) {
+        int n = 0;
+        while (bStart + n < base.length && tStart + n < target.length
+               && base[bStart + n] == target[tStart + n]) {
+            n += 1;
+        }
+        return n;
+    }
+
+    /** returns a hash of the BLOCK bytes of DATA starting at START. */
+    private static int hash(byte[] data, int start) {
+        int h = 0;
+        for (int i = start; i < start + BLOCK; i += 1) {
+            h = 31 * h + data[i];
+        }
+        return h;
+    }
+
+    /** Writes X to OUT as four big-endian bytes. */
+    private static void writeInt(ByteArrayOutputStream out, int x) {
+        out.write(x >>> 24);
+        out.write(x >>> 16);
+        out.write(x >>> 8);
+        out.write(x);
+    }
+}
@@ -0,0 +1,408 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/** Line diffs, unified diffs and three-way line merges of file
+ *  contents.  Contents are split into lines, and each distinct line is
+ *  given a small integer, so that the diff itself compares ints.  The
+ *  diff is Myers' O(ND) algorithm in its linear-space form: it takes
+ *  time proportional to the size of the files times the number of lines
+ *  that differ, after stripping any common prefix and suffix, and space
+ *  proportional to the size of the files.
+ *  @author Tracy
+ */
+class Diff {
+
+    /** Marker opening the head's side of a merge conflict. */
+    static final String OURS = "<<<<<<< HEAD\n";
+    /** Marker separating the two sides of a merge conflict. */
+    static final String SEPARATOR = "=======\n";
+    /** Marker closing the given branch's side of a merge conflict. */
+    static final String THEIRS = ">>>>>>>\n";
+
+    /** Lines of unchanged context around each hunk of a unified diff. */
+    static final int CONTEXT = 3;
+
+    /** Number of leading bytes searched for a NUL to decide whether
+     *  contents are binary. */
+    private static final int BINARY_PROBE = 8000;
+
+    /** The contents of a file, split into lines.  Each line includes its
+     *  terminating newline, if it has one. */
+    static class Lines {
+        /** The contents. */
+        private final byte[] _data;
+        /** Offset in _data of the start of each line, followed by the
+         *  length of _data. */
+        private final int[] _starts;
+
+        /** The lines of DATA. */
+        Lines(byte[] data) {
+            _data = data;
+            int n = 0;
+            for (int i = 0; i < data.length; i += 1) {
+                if (data[i] == '\n') {
+                    n += 1;
+                }
+            }
+            if (data.length > 0 && data[data.length - 1] != '\n') {
+                n += 1;
+            }
+            _starts = new int[n + 1];
+            int line = 1;
+            for (int i = 0; i < data.length && line < n; i += 1) {
+                if (data[i] == '\n') {
+                    _starts[line] = i + 1;
+                    line += 1;
+                }
+            }
+            _starts[n] = data.length;
+        }
+
+        /** returns the number of lines. */
+        int size() {
+            return _starts.length - 1;
+        }
+
+        /** returns line I, without copying it. */
+        ByteBuffer line(int i) {
+            return ByteBuffer.wrap(_data, _starts[i],
+                    _starts[i + 1] - _starts[i]);
+        }
+
+        /** returns whether line I ends with a newline. */
+        boolean terminated(int i) {
+            return _data[_starts[i + 1] - 1] == '\n';
+        }
+
+        /** returns whether the contents look binary, that is, have a NUL
+         *  byte among their first few thousand. */
+        boolean binary() {
+            for (int i = 0; i < Math.min(_data.length, BINARY_PROBE); i += 1) {
+                if (_data[i] == 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /** Writes lines FROM up to TO to OUT. */
+        void write(OutputStream out, int from, int to) throws IOException {
+            out.write(_data, _starts[from], _starts[to] - _starts[from]);
+        }
+    }
+
+    /** A region where lines [_aStart, _aEnd) of one file were replaced by
+     *  lines [_bStart, _bEnd) of another.  Either range may be empty. */
+    static class Edit {
+        /** First replaced line of the old file. */
+        final int _aStart;
+        /** End of the replaced lines of the old file. */
+        final int _aEnd;
+        /** First replacing line of the new file. */
+        final int _bStart;
+        /** End of the replacing lines of the new file. */
+        final int _bEnd;
+
+        /** An edit replacing lines [ASTART, AEND) by [BSTART, BEND). */
+        Edit(int aStart, int aEnd, int bStart, int bEnd) {
+            _aStart = aStart;
+            _aEnd = aEnd;
+            _bStart = bStart;
+            _bEnd = bEnd;
+        }
+    }
+
+    /** returns the lines of each of TEXTS as ints, where two lines get the
+     *  same int iff they are equal. */
+    static int[][] ids(Lines... texts) {
+        HashMap<ByteBuffer, Integer> ids = new HashMap<>();
+        int[][] result = new int[texts.length][];
+        for (int t = 0; t < texts.length; t += 1) {
+            result[t] = new int[texts[t].size()];
+            for (int i = 0; i < result[t].length; i += 1) {
+                Integer id = ids.putIfAbsent(texts[t].line(i), ids.size());
+                result[t][i] = id == null ? ids.size() - 1 : id;
+            }
+        }
+        return result;
+    }
+
+    /** returns the shortest list of edits that turns A into B, in order.
+     *  Consecutive edits are always separated by at least one unchanged
+     *  line. */
+    static List<Edit> diff(int[] a, int[] b) {
+        Trace.Phase phase = Trace.phase("line-diff");
+        try (phase) {
+            List<Edit> edits = new ArrayList<>();
+            diff(a, 0, a.length, b, 0, b.length, edits);
+            return edits;
+        }
+    }
+
+    /** Appends to EDITS the edits turning lines [ALO, AHI) of A into
+     *  lines [BLO, BHI) of B. */
+    private static void diff(int[] a, int aLo, int aHi,
+                             int[] b, int bLo, int bHi, List<Edit> edits) {
+        while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+            aLo += 1;
+            bLo += 1;
+        }
+        while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+            aHi -= 1;
+            bHi -= 1;
+        }
+        if (aLo == aHi || bLo == bHi) {
+            if (aLo < aHi || bLo < bHi) {
+                add(edits, new Edit(aLo, aHi, bLo, bHi));
+            }
+            return;
+        }
+        int[] split = middle(a, aLo, aHi, b, bLo, bHi);
+        if (split == null) {
+            add(edits, new Edit(aLo, aHi, bLo, bHi));
+            return;
+        }
+        diff(a, aLo, aLo + split[0], b, bLo, bLo + split[1], edits);
+        diff(a, aLo + split[0], aHi, b, bLo + split[1], bHi, edits);
+    }
+
+    /** Appends EDIT to EDITS, joining it to the last edit if the two
+     *  touch. */
+    private static void add(List<Edit> edits, Edit edit) {
+        int last = edits.size() - 1;
+        if (last >= 0 && edits.get(last)._aEnd == edit._aStart
+                && edits.get(last)._bEnd == edit._bStart) {
+            Edit prev = edits.remove(last);
+            edit = new Edit(prev._aStart, edit._aEnd,
+                    prev._bStart, edit._bEnd);
+        }
+        edits.add(edit);
+    }
+
+    /** returns a point {X, Y} on a shortest edit path from lines [ALO,
+     *  AHI) of A to lines [BLO, BHI) of B, relative to (ALO, BLO), which
+     *  splits the path into two halves of about equal cost, found by
+     *  running the greedy search forward from the start and backward
+     *  from the end until the two meet.  Returns null if they never do,
+     *  which cannot happen for inputs that differ. */
+    private static int[] middle(int[] a, int aLo, int aHi,
+                                int[] b, int bLo, int bHi) {
+        int n = aHi - aLo, m = bHi - bLo;
+        int maxD = (n + m + 1) / 2;
+        int off = maxD;
+        int[] v1 = new int[2 * maxD + 2], v2 = new int[2 * maxD + 2];
+        Arrays.fill(v1, -1);
+        Arrays.fill(v2, -1);
+        v1[off + 1] = 0;
+        v2[off + 1] = 0;
+        int delta = n - m;
+        boolean front = (delta & 1) != 0;
+        int k1start = 0, k1end = 0, k2start = 0, k2end = 0;
+        for (int d = 0; d < maxD; d += 1) {
+            for (int k1 = -d + k1start; k1 <= d - k1end; k1 += 2) {
+                int i = off + k1;
+                int x1 = k1 == -d || k1 != d && v1[i - 1] < v1[i + 1]
+                    ? v1[i + 1] : v1[i - 1] + 1;
+                int y1 = x1 - k1;
+                while (x1 < n && y1 < m && a[aLo + x1] == b[bLo + y1]) {
+                    x1 += 1;
+                    y1 += 1;
+                }
+                v1[i] = x1;
+                if (x1 > n) {
+                    k1end += 2;
+                } else if (y1 > m) {
+                    k1start += 2;
+                } else if (front) {
+                    int j = off + delta - k1;
+                    if (j >= 0 && j < v2.length && v2[j] != -1
+                            && x1 >= n - v2[j]) {
+                        return new int[] {x1, y1};
+                    }
+                }
+            }
+            for (int k2 = -d + k2start; k2 <= d - k2end; k2 += 2) {
+                int i = off + k2;
+                int x2 = k2 == -d || k2 != d && v2[i - 1] < v2[i + 1]
+                    ? v2[i + 1] : v2[i - 1] + 1;
+                int y2 = x2 - k2;
+                while (x2 < n && y2 < m
+                       && a[aHi - 1 - x2] == b[bHi - 1 - y2]) {
+                    x2 += 1;
+                    y2 += 1;
+                }
+                v2[i] = x2;
+                if (x2 > n) {
+                    k2end += 2;
+                } else if (y2 > m) {
+                    k2start += 2;
+                } else if (!front) {
+                    int j = off + delta - k2;
+                    if (j >= 0 && j < v1.length && v1[j] != -1
+                            && v1[j] >= n - x2) {
+                        return new int[] {v1[j], v1[j] - (j - off)};
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Writes to OUT the differences between A and B, the old and new
+     *  contents of file PATH, as a unified diff with CONTEXT lines of
+     *  context.  A null A or B means the file is absent on that side.
+     *  Each hunk is written as soon as it is formed, and no line is
+     *  copied.  Binary contents are only reported as differing. */
+    static void unified(String path, byte[] a, byte[] b, OutputStream out)
+            throws IOException {
+        Lines la = new Lines(a == null ? new byte[0] : a);
+        Lines lb = new Lines(b == null ? new byte[0] : b);
+        String from = a == null ? "/dev/null" : "a/" + path;
+        String to = b == null ? "/dev/null" : "b/" + path;
+        print(out, "diff --git a/" + path + " b/" + path + "\n");
+        if (la.binary() || lb.binary()) {
+            print(out, "Binary files " + from + " and " + to + " differ\n");
+            return;
+        }
+        print(out, "--- " + from + "\n+++ " + to + "\n");
+        int[][] ids = ids(la, lb);
+        List<Edit> edits = diff(ids[0], ids[1]);
+        for (int i = 0; i < edits.size();) {
+            int j = i + 1;
+            while (j < edits.size() && edits.get(j)._aStart
+                   - edits.get(j - 1)._aEnd <= 2 * CONTEXT) {
+                j += 1;
+            }
+            Edit first = edits.get(i), last = edits.get(j - 1);
+            int aLo = Math.max(0, first._aStart - CONTEXT);
+            int aHi = Math.min(la.size(), last._aEnd + CONTEXT);
+            int bLo = first._bStart - (first._aStart - aLo);
+            int bHi = last._bEnd + (aHi - last._aEnd);
+            print(out, "@@ -" + range(aLo, aHi) + " +" + range(bLo, bHi)
+                    + " @@\n");
+            int pos = aLo;
+            for (Edit e : edits.subList(i, j)) {
+                write(out, ' ', la, pos, e._aStart);
+                write(out, '-', la, e._aStart, e._aEnd);
+                write(out, '+', lb, e._bStart, e._bEnd);
+                pos = e._aEnd;
+            }
+            write(out, ' ', la, pos, aHi);
+            i = j;
+        }
+    }
+
+    /** returns the lines [LO, HI) as written in a hunk header. */
+    private static String range(int lo, int hi) {
+        if (hi - lo == 1) {
+            return Integer.toString(lo + 1);
+        }
+        return (hi == lo ? lo : lo + 1) + "," + (hi - lo);
+    }
+
+    /** Writes lines [FROM, TO) of TEXT to OUT, each preceded by PREFIX
+     *  and noting a missing final newline. */
+    private static void write(OutputStream out, char prefix, Lines text,
+                              int from, int to) throws IOException {
+        for (int i = from; i < to; i += 1) {
+            out.write(prefix);
+            text.write(out, i, i + 1);
+            if (!text.terminated(i)) {
+                print(out, "\n\\ No newline at end of file\n");
+            }
+        }
+    }
+
+    /** Writes S to OUT in UTF-8. */
+    private static void print(OutputStream out, String s)
+            throws IOException {
+        out.write(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Writes to OUT the three-way merge of OURS and THEIRS, two versions
+     *  of the file whose common ancestor is BASE, as diff3 does.  Changes
+     *  that only one side made to a region of BASE are taken from that
+     *  side, and changes that both sides made identically are taken
+     *  once.  Where both sides changed the same or adjoining lines
+     *  differently, both versions are written between conflict
+     *  markers.
+     * @return whether there was any conflict
+     */
+    static boolean merge(Lines base, Lines ours, Lines theirs,
+                         OutputStream out) throws IOException {
+        Trace.Phase phase = Trace.phase("line-merge");
+        try (phase) {
+            int[][] ids = ids(base, ours, theirs);
+            List<Edit> e1 = diff(ids[0], ids[1]);
+            List<Edit> e2 = diff(ids[0], ids[2]);
+            boolean conflict = false;
+            int i = 0, j = 0, pos = 0, delta1 = 0, delta2 = 0;
+            while (i < e1.size() || j < e2.size()) {
+                int lo = j == e2.size() ? e1.get(i)._aStart
+                    : i == e1.size() ? e2.get(j)._aStart
+                    : Math.min(e1.get(i)._aStart, e2.get(j)._aStart);
+                int hi = lo;
+                int i0 = i, j0 = j;
+                while (true) {
+                    if (i < e1.size() && e1.get(i)._aStart <= hi) {
+                        hi = Math.max(hi, e1.get(i)._aEnd);
+                        i += 1;
+                    } else if (j < e2.size() && e2.get(j)._aStart <= hi) {
+                        hi = Math.max(hi, e2.get(j)._aEnd);
+                        j += 1;
+                    } else {
+                        break;
+                    }
+                }
+                base.write(out, pos, lo);
+                int[] r1 = range(e1, i0, i, lo, hi, delta1);
+                int[] r2 = range(e2, j0, j, lo, hi, delta2);
+                if (j == j0) {
+                    ours.write(out, r1[0], r1[1]);
+                } else if (i == i0 || equal(ids[1], r1, ids[2], r2)) {
+                    theirs.write(out, r2[0], r2[1]);
+                } else {
+                    conflict = true;
+                    print(out, OURS);
+                    ours.write(out, r1[0], r1[1]);
+                    print(out, SEPARATOR);
+                    theirs.write(out, r2[0], r2[1]);
+                    print(out, THEIRS);
+                }
+                delta1 = r1[1] - hi;
+                delta2 = r2[1] - hi;
+                pos = hi;
+            }
+            base.write(out, pos, base.size());
+            return conflict;
+        }
+    }
+
+    /** returns the range {START, END} of lines in the new file that
+     *  replace lines [LO, HI) of the old one, given that EDITS[FROM] up to
+     *  EDITS[TO] are the edits within that range and that the new file's
+     *  line numbers before LO are DELTA more than the old file's. */
+    private static int[] range(List<Edit> edits, int from, int to,
+                               int lo, int hi, int delta) {
+        if (from == to) {
+            return new int[] {lo + delta, hi + delta};
+        }
+        Edit first = edits.get(from), last = edits.get(to - 1);
+        return new int[] {first._bStart - (first._aStart - lo),
+                          last._bEnd + (hi - last._aEnd)};
+    }
+
+    /** returns whether lines R1 of A are the same as lines R2 of B, where
+     *  each range is {START, END}. */
+    private static boolean equal(int[] a, int[] r1, int[] b, int[] r2) {
+        return Arrays.equals(a, r1[0], r1[1], b, r2[0], r2[1]);
+    }
+}
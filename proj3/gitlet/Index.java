@@ -0,0 +1,256 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** The staging area, kept in the single file .gitlet/index.  The index
+ *  holds one entry per tracked file, sorted by path, giving the blob id
+ *  the file will have in the next commit, and the size and
+ *  modification time the working file had when its contents were last
+ *  known to match that blob.  A file is staged for addition if its entry
+ *  differs from the current commit, and staged for removal if the
+ *  current commit tracks it but the index does not.
+ *
+ *  A working file whose size and modification time still match its
+ *  entry is known to hold the entry's blob without being read.  Entries
+ *  modified no earlier than the index file itself are not trusted, since
+ *  the file may have changed again within the same timestamp tick.
+ *  @author Tracy
+ */
+public class Index {
+
+    /** File referring to the index file in .gitlet. */
+    static final File INDEX_FILE = Utils.join(".gitlet", "index");
+
+    /** First bytes of INDEX_FILE: "GIDX". */
+    private static final int SIGNATURE = 0x47494458;
+    /** Version of the format of INDEX_FILE, which follows SIGNATURE. */
+    private static final int VERSION = 3;
+
+    /** Length of a raw SHA-1 hash. */
+    private static final int HASH_BYTES = Utils.UID_LENGTH / 2;
+
+    /** Staged blob and stat data of one tracked file. */
+    private static class Entry {
+        /** Blob id of the file's contents in the next commit. */
+        private String _id;
+        /** Size of the working file in bytes, or -1 if the working file
+         *  is not known to hold blob _id. */
+        private long _size;
+        /** Modification time of the working file. */
+        private long _mtime;
+
+        /** An entry for blob ID, whose working file had SIZE bytes and
+         *  was last modified at MTIME. */
+        Entry(String id, long size, long mtime) {
+            _id = id;
+            _size = size;
+            _mtime = mtime;
+        }
+    }
+
+    /** Copy of the index as last read or written, or null. */
+    private static Index _loaded;
+    /** Stamp of INDEX_FILE when _loaded was read or written. */
+    private static Object _loadedStamp;
+
+    static {
+        Cache.onClear(() -> _loadedStamp = null);
+    }
+
+    /** Entries by file path. */
+    private TreeMap<String, Entry> _entries = new TreeMap<>();
+    /** Modification time of INDEX_FILE when it was loaded. */
+    private long _stamp;
+    /** True iff the entries differ from INDEX_FILE. */
+    private boolean _changed;
+
+    /** returns the index read from INDEX_FILE, or an empty index if
+     *  there is none.  The file is parsed again only if it has changed
+     *  since it was last read or written. */
+    public static Index load() {
+        Object stamp = Cache.stamp(INDEX_FILE);
+        Trace.cache(stamp != null && stamp.equals(_loadedStamp));
+        if (stamp != null && stamp.equals(_loadedStamp)) {
+            return _loaded.copy();
+        }
+        Index index = new Index();
+        if (stamp == null) {
+            return index;
+        }
+        index._stamp = INDEX_FILE.lastModified();
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(Utils.readContents(INDEX_FILE)))) {
+            if (in.readInt() != SIGNATURE || in.readInt() != VERSION) {
+                throw new IllegalArgumentException("unknown index format");
+            }
+            int n = in.readInt();
+            byte[] hash = new byte[HASH_BYTES];
+            for (int i = 0; i < n; i += 1) {
+                String name = in.readUTF();
+                in.readFully(hash);
+                long size = in.readLong();
+                long mtime = in.readLong();
+                index._entries.put(name,
+                        new Entry(Utils.toHex(hash), size, mtime));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _loaded = index.copy();
+        _loadedStamp = stamp;
+        Trace.deserialized();
+        return index;
+    }
+
+    /** returns a copy of this index that can be changed independently. */
+    private Index copy() {
+        Index index = new Index();
+        index._entries = new TreeMap<>(_entries);
+        index._stamp = _stamp;
+        return index;
+    }
+
+    /** returns the blob id of the contents of FILE, which must exist.
+     *  Reads and hashes FILE only if its stat data does not match its
+     *  entry.  If FILE turns out to hold its staged blob after all, the
+     *  entry's stat data is refreshed. */
+    public String id(File file) {
+        String id = cachedId(file);
+        if (id == null) {
+            id = Utils.sha1(file);
+            Entry entry = _entries.get(path(file));
+            if (entry != null && entry._id.equals(id)) {
+                record(file, id);
+            }
+        }
+        return id;
+    }
+
+    /** returns the blob id staged for FILE, which must exist, if its
+     *  stat data still matches its entry, and otherwise null. */
+    public String cachedId(File file) {
+        Entry entry = _entries.get(path(file));
+        if (entry != null && entry._size == file.length()
+                && entry._mtime == file.lastModified()
+                && entry._mtime < _stamp) {
+            return entry._id;
+        }
+        return null;
+    }
+
+    /** returns whether FILE, which must exist, has the size recorded in
+     *  its entry, so that it may still hold its staged blob although its
+     *  stat data does not match. */
+    public boolean sameSize(File file) {
+        Entry entry = _entries.get(path(file));
+        return entry != null && entry._size == file.length();
+    }
+
+    /** returns the blob id staged for file NAME, or null if it is not
+     *  tracked. */
+    public String get(String name) {
+        Entry entry = _entries.get(name);
+        return entry == null ? null : entry._id;
+    }
+
+    /** returns whether file NAME is tracked. */
+    public boolean contains(String name) {
+        return _entries.containsKey(name);
+    }
+
+    /** returns the blob ids of all tracked files, by name: the files of
+     *  the next commit. */
+    public HashMap<String, String> files() {
+        HashMap<String, String> files = new HashMap<>();
+        for (Map.Entry<String, Entry> e : _entries.entrySet()) {
+            files.put(e.getKey(), e.getValue()._id);
+        }
+        return files;
+    }
+
+    /** Stages FILE, which must exist and currently holds the blob with
+     *  id ID, and records its stat data. */
+    public void record(File file, String id) {
+        _entries.put(path(file), new Entry(id, file.length(),
+                file.lastModified()));
+        _changed = true;
+    }
+
+    /** Stages blob ID for file NAME without claiming anything about the
+     *  working file. */
+    public void stage(String name, String id) {
+        Entry old = _entries.get(name);
+        if (old != null && old._id.equals(id)) {
+            return;
+        }
+        _entries.put(name, new Entry(id, -1, 0));
+        _changed = true;
+    }
+
+    /** Stops tracking file NAME. */
+    public void remove(String name) {
+        if (_entries.remove(name) != null) {
+            _changed = true;
+        }
+    }
+
+    /** Makes the tracked files exactly FILES, keeping the stat data of
+     *  entries whose blobs are unchanged. */
+    public void reset(Map<String, String> files) {
+        if (_entries.keySet().retainAll(files.keySet())) {
+            _changed = true;
+        }
+        for (Map.Entry<String, String> e : files.entrySet()) {
+            stage(e.getKey(), e.getValue());
+        }
+    }
+
+    /** returns the path of FILE, which is named relative to the working
+     *  directory, as used for entries. */
+    private static String path(File file) {
+        return file.getPath().replace(File.separatorChar, '/');
+    }
+
+    /** Writes this index to INDEX_FILE if it has changed. */
+    public void save() {
+        if (!_changed) {
+            return;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(SIGNATURE);
+            out.writeInt(VERSION);
+            out.writeInt(_entries.size());
+            for (Map.Entry<String, Entry> e : _entries.entrySet()) {
+                Entry entry = e.getValue();
+                out.writeUTF(e.getKey());
+                out.write(Utils.fromHex(entry._id));
+                out.writeLong(entry._size);
+                out.writeLong(entry._mtime);
+            }
+            out.close();
+            File tmp = Utils.join(".gitlet", "index.tmp");
+            Utils.writeContents(tmp, bytes.toByteArray());
+            Files.move(tmp.toPath(), INDEX_FILE.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            _loaded = copy();
+            _loaded._stamp = INDEX_FILE.lastModified();
+            _loadedStamp = Cache.stamp(INDEX_FILE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _changed = false;
+    }
+}
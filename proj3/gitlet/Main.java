@@ -1,13 +1,33 @@
 package gitlet;
 
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileReader;
 import java.io.IOException;
-import java.util.Arrays;
+import java.io.OutputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.text.SimpleDateFormat;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
 
 /** Driver class for Gitlet, the tiny stupid version-control system.
  *  @author Tracy
@@ -20,10 +40,49 @@ public class Main {
     /** Main metadata folder. */
     static final File GITLET_FOLDER = new File(".gitlet");
 
+    /** Line terminator written after the last log entry. */
+    private static final byte[] NEWLINE = {'\n'};
+
+    /** Blank line written between log entries. */
+    private static final byte[] SEPARATOR = {'\n', '\n'};
+
 
     /** Usage: java gitlet.Main ARGS, where ARGS contains
-     *  <COMMAND> <OPERAND> .... */
+     *  <COMMAND> <OPERAND> ....  The command is handed to the daemon for
+     *  this repository if one is running, and is run here otherwise.
+     *  Leading --trace options are handled by Trace, and keep the command
+     *  here so that the report goes to this process's standard error. */
     public static void main(String... args) throws IOException {
+        try {
+            args = Trace.configure(args);
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+            return;
+        }
+        if (Trace.enabled() || !Daemon.forward(args)) {
+            execute(args);
+        }
+    }
+
+    /** Runs the command in ARGS, printing the message of any error that
+     *  ends it, and reports its trace; see Trace. */
+    static void execute(String... args) throws IOException {
+        Trace.start();
+        long start = System.nanoTime();
+        try {
+            run(args);
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+        } finally {
+            System.out.flush();
+            Trace.finish(args.length == 0 ? "" : args[0],
+                    System.nanoTime() - start, System.err);
+        }
+    }
+
+    /** Runs the command in ARGS.  Errors are thrown as GitletExceptions
+     *  carrying the message to print. */
+    static void run(String... args) throws IOException {
         if (args.length == 0) {
             exit("Please enter a command.");
         }
@@ -32,7 +91,7 @@ public class Main {
             init();
             break;
         case "log":
-            log();
+            log(args);
             break;
         case "global-log":
             globallog();
@@ -67,6 +126,21 @@ public class Main {
         case "merge":
             merge(args);
             break;
+        case "diff":
+            diff(args);
+            break;
+        case "blame":
+            blame(args);
+            break;
+        case "gc":
+            gc(args);
+            break;
+        case "daemon":
+            daemon(args);
+            break;
+        case "batch":
+            batch(args);
+            break;
         default:
             exit("No command with that name exists.");
         }
@@ -81,82 +155,142 @@ public class Main {
             bRANCHES.mkdir();
             File cOMMITS = Utils.join(GITLET_FOLDER, "commits");
             cOMMITS.mkdir();
+            CommitIndex.INDEX_FOLDER.mkdir();
+            Blob.OBJECTS_FOLDER.mkdir();
             HashMap<String, String> empty = new HashMap<String, String>();
             Commit initial = new Commit("initial commit",
-                    "Wed Dec 31 16:00:00 1969 -0800", empty, null, null);
-            Branch master = new Branch("master", null, initial);
-            Branch head = new Branch("head", "master", initial);
+                    0, "-0800", empty, null, null);
             initial.save();
-            master.save();
-            head.save();
-            File aDDITION = Utils.join(GITLET_FOLDER, "addition");
-            aDDITION.mkdir();
-            File rEMOVAL = Utils.join(GITLET_FOLDER, "removal");
-            rEMOVAL.mkdir();
+            Branch.setId("master", initial.id());
+            Branch.setCurrent("master");
         } else {
             exit("A Gitlet version-control system "
                     + "already exists in the current directory.");
         }
     }
 
-    /** log command. */
-    public static void log() throws IOException {
+    /** log command.  Streams the first-parent history of the current
+     *  branch, stopping early after -n COUNT entries or at the first
+     *  commit older than --since DATE.  With -- PATH, shows only the
+     *  commits that changed the file or directory PATH from their first
+     *  parents, using the changed-path filters in the commit graph to
+     *  pass over most other commits without reading them.
+     * @param args operands
+     * @throws IOException
+     */
+    public static void log(String[] args) throws IOException {
         if (!GITLET_FOLDER.exists()) {
             System.out.println("===\n");
-        } else {
-            File log = Utils.join(GITLET_FOLDER, "log");
-            log.createNewFile();
-
-            File hEAD = Utils.join(GITLET_FOLDER, "branches", "head");
-            Branch headBranch = Utils.readObject(hEAD, Branch.class);
-            Commit head = headBranch.getCommit();
-
-            String id = head.id();
-            String timestamp = head.time();
-            String message = head.message();
-            String curCommit = "";
-            if (head.parent2() != null) {
-                String p1 = head.parent().substring(0, 7);
-                String p2 = head.parent2().substring(0, 7);
-                curCommit = String.format("===\ncommit %s\nMerge: %s %s\n"
-                        + "Date: %s\n%s", id, p1, p2, timestamp, message);
-            } else {
-                curCommit = String.format("===\ncommit %s\n"
-                        + "Date: %s\n%s", id, timestamp, message);
-            }
-            Utils.writeContents(log, curCommit);
-
-            while (head.parent() != null) {
-                File p = Utils.join(GITLET_FOLDER, "commits", head.parent());
-                Commit parent = Utils.readObject(p, Commit.class);
-                String pId = parent.id();
-                String pTimestamp = parent.time();
-                String pMessage = parent.message();
-                String pCommit = "";
-                if (parent.parent2() != null) {
-                    String pp1 = parent.parent().substring(0, 7);
-                    String pp2 = parent.parent2().substring(0, 7);
-                    pCommit = String.format("===\ncommit %s\nMerge: %s %s\n"
-                            + "Date: %s\n%s",
-                            pId, pp1, pp2, pTimestamp, pMessage);
-                } else {
-                    pCommit = String.format("===\ncommit %s\nDate: %s\n%s",
-                            pId, pTimestamp, pMessage);
-                }
-                curCommit = curCommit + "\n\n" + pCommit;
-                Utils.writeContents(log, curCommit);
-                head = parent;
+            return;
+        }
+        int limit = Integer.MAX_VALUE;
+        Date since = null;
+        String path = null;
+        for (int i = 1; i < args.length; i += 2) {
+            if (i + 1 == args.length) {
+                exit("Incorrect operands.");
+            }
+            switch (args[i]) {
+            case "-n":
+                limit = logCount(args[i + 1]);
+                break;
+            case "--since":
+                since = logDate(args[i + 1]);
+                break;
+            case "--":
+                path = args[i + 1].replaceAll("/+$", "");
+                break;
+            default:
+                exit("Incorrect operands.");
             }
-            String logs = Utils.readContentsAsString(log);
-            System.out.println(logs);
         }
+        BufferedOutputStream out = new BufferedOutputStream(System.out);
+        CommitGraph graph = path == null ? null : CommitGraph.load();
+        String id = Branch.headId();
+        for (int n = 0; id != null && n < limit;) {
+            if (path != null && !logChanged(graph, id, path)) {
+                id = graph.parent(id);
+                continue;
+            }
+            Commit commit = Commit.load(id);
+            if (since != null && commit.date().before(since)) {
+                break;
+            }
+            if (n > 0) {
+                out.write(NEWLINE);
+            }
+            out.write(commit.logEntry().getBytes(StandardCharsets.UTF_8));
+            out.write(NEWLINE);
+            n += 1;
+            id = commit.parent();
+        }
+        out.flush();
     }
 
-    /** global-log command. */
-    public static void globallog() {
-        File global = Utils.join(GITLET_FOLDER, "global-log");
-        String glog = Utils.readContentsAsString(global);
-        System.out.println(glog);
+    /** returns whether the commit with id ID in GRAPH changed PATH from
+     *  its first parent.  Commits whose changed-path filters rule PATH
+     *  out are not read. */
+    private static boolean logChanged(CommitGraph graph, String id,
+                                      String path) {
+        if (!graph.mayHaveChanged(id, path)) {
+            return false;
+        }
+        Commit commit = Commit.load(id);
+        String parentTree = commit.parent() == null ? null
+            : Commit.load(commit.parent()).tree();
+        return !Objects.equals(Tree.find(parentTree, path),
+                Tree.find(commit.tree(), path));
+    }
+
+    /** returns the entry count given by the -n operand COUNT. */
+    private static int logCount(String count) {
+        try {
+            int n = Integer.parseInt(count);
+            if (n >= 0) {
+                return n;
+            }
+        } catch (NumberFormatException excp) {
+            /* Reported below. */
+        }
+        exit("Incorrect operands.");
+        return 0;
+    }
+
+    /** returns the date given by the --since operand DATE, which is either
+     *  in commit timestamp format or of the form yyyy-MM-dd. */
+    private static Date logDate(String date) {
+        for (String pattern : new String[] {Commit.DATE_PATTERN,
+                                             "yyyy-MM-dd"}) {
+            try {
+                return new SimpleDateFormat(pattern).parse(date);
+            } catch (ParseException excp) {
+                /* Try the next pattern. */
+            }
+        }
+        exit("Incorrect operands.");
+        return null;
+    }
+
+    /** global-log command.  Walks the global-log journal from its end so
+     *  the newest commit is printed first, streaming each entry.
+     * @throws IOException
+     */
+    public static void globallog() throws IOException {
+        BufferedOutputStream out = new BufferedOutputStream(System.out);
+        try (RandomAccessFile log =
+                     new RandomAccessFile(Commit.GLOBAL_LOG, "r")) {
+            long pos = log.length();
+            while (pos > 0) {
+                log.seek(pos - Integer.BYTES);
+                byte[] entry = new byte[log.readInt()];
+                pos -= Integer.BYTES + entry.length;
+                log.seek(pos);
+                log.readFully(entry);
+                out.write(entry);
+                out.write(pos > 0 ? SEPARATOR : NEWLINE);
+            }
+        }
+        out.flush();
     }
 
     /** find command.
@@ -167,65 +301,89 @@ public class Main {
             exit(String.format("Incorrect number of arguments for %s",
                     args[0]));
         } else {
-            String message = args[1];
-            boolean exist = false;
-            File commitfolder = Utils.join(GITLET_FOLDER, "commits");
-            File[] commits = commitfolder.listFiles();
-            for (File f: commits) {
-                Commit com = Utils.readObject(f, Commit.class);
-                if (com.message().equals(message)) {
-                    System.out.println(com.id());
-                    exist = true;
-                }
-            }
-            if (!exist) {
+            List<String> ids = CommitIndex.find(args[1]);
+            if (ids.isEmpty()) {
                 exit("Found no commit with that message.");
             }
+            for (String id : ids) {
+                System.out.println(id);
+            }
         }
     }
 
-    /** add command.
+    /** add command.  Each operand is a file, a directory, whose plain
+     *  files are all added, or a glob pattern matched against the names
+     *  of files in the working directory.  An operand that names an
+     *  existing file is taken literally, even if it looks like a glob.
+     *  Files whose stat data does not match the index are hashed and
+     *  stored in parallel, each in a single streaming pass, except that
+     *  one that still has its staged size is hashed first, as it may only
+     *  have been touched.  A file whose contents match the current commit
+     *  ends up unstaged.
      * @param args operands
      * @throws IOException
      * */
     public static void add(String[] args) throws IOException {
-        if (args.length == 2) {
-            String filename = args[1];
-            File rmFile = Utils.join(GITLET_FOLDER, "removal", filename);
+        if (args.length < 2) {
+            exit(String.format("Invalid number of arguments for %s", args[0]));
+        }
+        Index index = Index.load();
+        List<Callable<String>> saves = new ArrayList<>();
+        List<File> saved = new ArrayList<>();
+        for (String filename : addPaths(args)) {
             File cur = new File(filename);
-            if (rmFile.exists()) {
-                cur.createNewFile();
-                Utils.writeContents(cur, Utils.readContentsAsString(rmFile));
-                rmFile.delete();
+            String id = index.cachedId(cur);
+            if (id == null) {
+                boolean touched = index.sameSize(cur);
+                saved.add(cur);
+                saves.add(() -> Blob.save(cur, touched));
             } else {
-                if (!cur.exists()) {
-                    exit("File does not exist.");
-                }
-                String current = Utils.readContentsAsString(cur);
-                File thisFile = Utils.join(GITLET_FOLDER, "addition", filename);
-
-                File hEAD = Utils.join(GITLET_FOLDER, "branches", "head");
-                Branch headBranch = Utils.readObject(hEAD, Branch.class);
-                Commit head = headBranch.getCommit();
-                if (head.files() != null
-                        && head.files().containsKey(filename)) {
-                    String com = head.files().get(filename);
-                    if (com.equals(current)) {
-                        if (thisFile.exists()) {
-                            thisFile.delete();
-                        }
-                    } else {
-                        thisFile.createNewFile();
-                        Utils.writeContents(thisFile, current);
+                index.record(cur, id);
+            }
+        }
+        List<String> ids = Utils.parallel(saves);
+        for (int i = 0; i < saved.size(); i += 1) {
+            index.record(saved.get(i), ids.get(i));
+        }
+        index.save();
+    }
+
+    /** returns the paths of the files denoted by the operands of add in
+     *  ARGS, without duplicates.  Exits if an operand denotes no file, or
+     *  a file outside the working directory.
+     */
+    private static TreeSet<String> addPaths(String[] args) {
+        TreeSet<String> paths = new TreeSet<>();
+        Path root = CWD.toPath().toAbsolutePath().normalize();
+        for (int i = 1; i < args.length; i += 1) {
+            File file = new File(args[i]);
+            String path = root.relativize(file.toPath().toAbsolutePath()
+                    .normalize()).toString().replace(File.separatorChar, '/');
+            if (path.equals("..") || path.startsWith("../")
+                    || path.equals(".gitlet")
+                    || path.startsWith(".gitlet/")) {
+                exit("Only files in the working directory can be added.");
+            }
+            TreeSet<String> found = new TreeSet<>();
+            if (file.isDirectory()) {
+                found = WorkTree.files(path);
+            } else if (file.isFile()) {
+                found.add(path);
+            } else if (args[i].matches(".*[*?\\[{].*")) {
+                PathMatcher glob = FileSystems.getDefault()
+                    .getPathMatcher("glob:" + path);
+                for (String name : WorkTree.files("")) {
+                    if (glob.matches(Paths.get(name))) {
+                        found.add(name);
                     }
-                } else {
-                    thisFile.createNewFile();
-                    Utils.writeContents(thisFile, current);
                 }
             }
-        } else {
-            exit(String.format("Invalid number of arguments for %s", args[0]));
+            if (found.isEmpty() && !file.isDirectory()) {
+                exit("File does not exist.");
+            }
+            paths.addAll(found);
         }
+        return paths;
     }
 
     /** rm command.
@@ -235,33 +393,17 @@ public class Main {
     public static void rm(String[] args) throws IOException {
         if (args.length == 2) {
             String filename = args[1];
-            File sTAGEDADD = Utils.join(GITLET_FOLDER, "addition");
-            File thisFile = Utils.join(sTAGEDADD, filename);
-
-            File hEAD = Utils.join(GITLET_FOLDER, "branches", "head");
-            Branch headBranch = Utils.readObject(hEAD, Branch.class);
-            Commit head = headBranch.getCommit();
-            boolean remove = true;
-
-            if (thisFile.exists()) {
-                thisFile.delete();
-                remove = false;
-            }
-            if (head.files() != null && head.files().containsKey(filename)) {
-                File file = new File(filename);
-                File sTAGEDRM = Utils.join(GITLET_FOLDER, "removal");
-                File deleteFile = Utils.join(sTAGEDRM, filename);
-                deleteFile.createNewFile();
-                if (file.exists()) {
-                    String contents = Utils.readContentsAsString(file);
-                    Utils.writeContents(deleteFile, contents);
-                }
-                file.delete();
-                remove = false;
-            }
-            if (remove) {
+            Commit head = Branch.headCommit();
+            Index index = Index.load();
+            boolean inHead = Tree.blob(head.tree(), filename) != null;
+            if (!index.contains(filename) && !inHead) {
                 exit("No reason to remove the file");
             }
+            index.remove(filename);
+            if (inHead) {
+                WorkTree.delete(filename);
+            }
+            index.save();
         }
     }
 
@@ -271,91 +413,65 @@ public class Main {
             exit("Not in an initialized Gitlet directory.");
         }
         System.out.println("=== Branches ===");
-        File[] branches = Utils.join(GITLET_FOLDER, "branches").listFiles();
-        File hEAD = Utils.join(GITLET_FOLDER, "branches", "head");
-        Branch headBranch = Utils.readObject(hEAD, Branch.class);
-        Commit head = headBranch.getCommit();
-        String current = headBranch.getHead();
-        Arrays.sort(branches);
-        for (File b: branches) {
-            if (b.getName().equals(current)) {
-                System.out.println("*" + b.getName());
-            } else if (!b.getName().equals("head")) {
-                System.out.println(b.getName());
+        String current = Branch.current();
+        for (String b : Branch.names()) {
+            if (b.equals(current)) {
+                System.out.println("*" + b);
+            } else {
+                System.out.println(b);
             }
         }
         System.out.println("");
+        Commit head = Branch.headCommit();
+        Index index = Index.load();
+        TreeMap<String, String[]> changes =
+            Tree.diff(head.tree(), index.files());
         System.out.println("=== Staged Files ===");
-        File[] addition = Utils.join(GITLET_FOLDER,
-                "addition").listFiles();
-        if (addition.length > 0) {
-            Arrays.sort(addition);
-            for (File a : addition) {
-                System.out.println(a.getName());
+        for (Map.Entry<String, String[]> change : changes.entrySet()) {
+            if (change.getValue()[1] != null) {
+                System.out.println(change.getKey());
             }
         }
         System.out.println("");
         System.out.println("=== Removed Files ===");
-        File[] removal = Utils.join(GITLET_FOLDER,
-                "removal").listFiles();
-        if (removal.length > 0) {
-            Arrays.sort(removal);
-            for (File r : removal) {
-                System.out.println(r.getName());
+        for (Map.Entry<String, String[]> change : changes.entrySet()) {
+            if (change.getValue()[1] == null) {
+                System.out.println(change.getKey());
             }
         }
-        File[] working = CWD.listFiles();
-        if (working.length > 0) {
-            Arrays.sort(working);
-        }
+        TreeSet<String> working = WorkTree.files("");
         System.out.println("");
-        statusMod();
+        statusMod(index, working);
         System.out.println("=== Untracked Files ===");
-        for (File f: working) {
-            File inAdd = Utils.join(GITLET_FOLDER, "addition", f.getName());
-            if (!head.files().containsKey(f.getName()) && !inAdd.exists()) {
-                if (!f.getName().equals(".DS_Store")
-                        && !f.getName().equals(".gitlet")
-                        && !f.getName().equals("gitlet")) {
-                    System.out.println(f.getName());
-                }
+        for (String path : working) {
+            if (!index.contains(path)) {
+                System.out.println(path);
             }
         }
+        index.save();
         System.out.println("");
     }
 
-    /** mod portion of status. */
-    public static void statusMod() {
-        File hEAD = Utils.join(GITLET_FOLDER, "branches", "head");
-        Branch headBranch = Utils.readObject(hEAD, Branch.class);
-        Commit head = headBranch.getCommit();
-        File[] working = CWD.listFiles();
-        if (working.length > 0) {
-            Arrays.sort(working);
-        }
+    /** mod portion of status.  Compares WORKING, the paths of the
+     *  working files, with their entries in INDEX.  Working files are
+     *  hashed only if their stat data changed. */
+    public static void statusMod(Index index, TreeSet<String> working) {
         System.out.println("=== Modifications Not Staged For Commit ===");
-        for (File f: working) {
-            if (!f.getName().equals(".DS_Store")
-                    && !f.getName().equals(".gitlet")
-                    && !f.getName().equals("gitlet")) {
-                String contents = Utils.readContentsAsString(f);
-                String name = f.getName();
-                File inAdd = Utils.join(GITLET_FOLDER, "addition", f.getName());
-                if (head.files().containsKey(name)
-                        && !head.files().get(name).equals(contents)) {
-                    System.out.println(name + " (modified)");
-                }
+        TreeSet<String> names = new TreeSet<>();
+        for (String path : working) {
+            if (index.contains(path)
+                    && !index.get(path).equals(index.id(new File(path)))) {
+                names.add(path + " (modified)");
             }
         }
-        for (Map.Entry<String, String> entry : head.files().entrySet()) {
-            String k = entry.getKey();
-            File f = new File(k);
-            File inAdd = Utils.join(GITLET_FOLDER, "addition", f.getName());
-            File inRm = Utils.join(GITLET_FOLDER, "removal", f.getName());
-            if (!f.exists() && !inAdd.exists() && !inRm.exists()) {
-                System.out.println(k + " (deleted)");
+        for (Map.Entry<String, String> entry : index.files().entrySet()) {
+            if (!new File(entry.getKey()).exists()) {
+                names.add(entry.getKey() + " (deleted)");
             }
         }
+        for (String name : names) {
+            System.out.println(name);
+        }
         System.out.println("");
     }
 
@@ -367,52 +483,20 @@ public class Main {
     public static void commit(String[] args, String p2) throws IOException {
         if (args.length == 2 && args[1].length() > 0) {
             String message = args[1];
-            SimpleDateFormat datePattern =
-                    new SimpleDateFormat("E MMM dd HH:mm:ss yyyy Z");
             Date date = new Date();
-            String time = datePattern.format(date);
-
-            boolean isMerge = false;
-            if (p2 != null) {
-                isMerge = true;
-            }
+            long time = date.getTime() / 1000;
+            String zone = new SimpleDateFormat("Z").format(date);
 
-            File sTAGEDA = Utils.join(GITLET_FOLDER, "addition");
-            File[] stagedFilesA = sTAGEDA.listFiles();
-            File sTAGEDR = Utils.join(GITLET_FOLDER, "removal");
-            File[] stagedFilesR = sTAGEDR.listFiles();
-            if (stagedFilesA.length == 0 && stagedFilesR.length == 0) {
+            Commit head = Branch.headCommit();
+            HashMap<String, String> curfiles = Index.load().files();
+            if (Tree.id(curfiles).equals(head.tree())) {
                 exit("No changes added to the commit.");
             }
-            HashMap<String, String> curfiles = new HashMap<String, String>();
-            File hEAD = Utils.join(GITLET_FOLDER, "branches", "head");
-            Branch headBranch = Utils.readObject(hEAD, Branch.class);
-            Commit head = headBranch.getCommit();
-            curfiles = head.files();
-            if (stagedFilesA.length != 0) {
-                for (File f : stagedFilesA) {
-                    curfiles.put(f.getName(), Utils.readContentsAsString(f));
-                    f.delete();
-                }
-            }
-            if (stagedFilesR.length != 0) {
-                for (File f : stagedFilesR) {
-                    curfiles.remove(f.getName());
-                    f.delete();
-                }
-            }
 
-            Commit commit = new Commit(message, time,
-                    curfiles, head.id(), null);
-            if (isMerge) {
-                commit.setParent2(p2);
-            }
+            Commit commit = new Commit(message, time, zone,
+                    curfiles, head.id(), p2);
             commit.save();
-            headBranch.setCommit(commit);
-            Utils.writeObject(hEAD, headBranch);
-            File cur = Utils.join(GITLET_FOLDER,
-                    "branches", headBranch.getHead());
-            Utils.writeObject(cur, headBranch);
+            Branch.setId(Branch.current(), commit.id());
         } else {
             exit("Please enter a commit message.");
         }
@@ -423,49 +507,30 @@ public class Main {
      * @throws IOException
      */
     public static void checkout(String[] args) throws IOException {
-        File hEAD = Utils.join(GITLET_FOLDER, "branches", "head");
-        Branch headBranch = Utils.readObject(hEAD, Branch.class);
-        Commit head = headBranch.getCommit();
+        Commit head = Branch.headCommit();
         if (args.length <= 1) {
             exit(String.format("Incorrect number of arguments for %s",
                     args[0]));
         } else {
             if (args.length == 3 && args[1].equals("--")) {
                 String filename = args[2];
-                boolean inCommit = head.files().containsKey(filename);
-                if (inCommit) {
-                    File file = new File(filename);
-                    String contents = head.files().get(filename);
-                    file.createNewFile();
-                    Utils.writeContents(file, contents);
+                String id = Tree.blob(head.tree(), filename);
+                if (id != null) {
+                    checkoutFile(filename, id);
                 } else {
                     exit("File does not exist in that commit.");
                 }
             } else if (args.length == 4) {
                 String filename = args[3];
-                File commits = Utils.join(GITLET_FOLDER, "commits");
-                String commitname = "";
-                for (File c: commits.listFiles()) {
-                    if (c.getName().contains(args[1])) {
-                        commitname = c.getName();
-                    }
-                }
                 if (!args[2].equals("--")) {
                     exit("Incorrect operands.");
                 }
-                File commit = Utils.join(GITLET_FOLDER, "commits", commitname);
-                if (!commit.getName().equals("commits")) {
-                    Commit com = Utils.readObject(commit, Commit.class);
-                    if (com.files().containsKey(filename)) {
-                        File file = new File(filename);
-                        String contents = com.files().get(filename);
-                        file.createNewFile();
-                        Utils.writeContents(file, contents);
-                    } else {
-                        exit("File does not exist in that commit.");
-                    }
+                Commit com = Commit.load(resolveCommit(args[1]));
+                String id = Tree.blob(com.tree(), filename);
+                if (id != null) {
+                    checkoutFile(filename, id);
                 } else {
-                    exit("No commit with that id exists.");
+                    exit("File does not exist in that commit.");
                 }
             } else if (args.length == 2) {
                 checkoutHelper(args[1]);
@@ -476,45 +541,31 @@ public class Main {
         }
     }
 
+    /** Writes the blob with id ID to working file FILENAME, refreshing
+     *  its index entry if ID is the staged blob.  Nothing is staged.
+     * @throws IOException
+     */
+    private static void checkoutFile(String filename, String id)
+            throws IOException {
+        File file = new File(filename);
+        WorkTree.checkout(filename, id);
+        Index index = Index.load();
+        if (id.equals(index.get(filename))) {
+            index.record(file, id);
+            index.save();
+        }
+    }
+
     /** checkout helper for usage3.
      * @param branchName branch name
      */
     public static void checkoutHelper(String branchName) {
-        File hEAD = Utils.join(GITLET_FOLDER, "branches", "head");
-        Branch headBranch = Utils.readObject(hEAD, Branch.class);
-        Commit head = headBranch.getCommit();
-        File bRANCH = Utils.join(GITLET_FOLDER, "branches", branchName);
-        if (bRANCH.exists()) {
-            if (!headBranch.getHead().equals(branchName)) {
-                Branch branch = Utils.readObject(bRANCH, Branch.class);
-                Commit commit = branch.getCommit();
-                HashMap<String, String> files = commit.files();
-                for (Map.Entry<String, String> entry : files.entrySet()) {
-                    String k = entry.getKey();
-                    File f = new File(k);
-                    if (f.exists()) {
-                        String contents = Utils.readContentsAsString(f);
-                        if (!head.files().containsKey(k)
-                                || !contents.equals(head.files().get(k))) {
-                            exit("There is an untracked file in the way; "
-                                    + "delete it, or add and commit it first.");
-                        }
-                    }
-                    String v = entry.getValue();
-                    Utils.writeContents(f, v);
-                }
-                for (File f : CWD.listFiles()) {
-                    String name = f.getName();
-                    if (head.files().containsKey(name)
-                            && !files.containsKey(name)) {
-                        File cwdfile = new File(name);
-                        cwdfile.delete();
-                    }
-                }
-                headBranch.setHead(branchName);
-                headBranch.setCommit(commit);
-                Utils.writeObject(hEAD, headBranch);
-                clearStage();
+        Commit head = Branch.headCommit();
+        if (Branch.exists(branchName)) {
+            if (!Branch.current().equals(branchName)) {
+                Commit commit = Commit.load(Branch.id(branchName));
+                checkoutCommit(head, commit);
+                Branch.setCurrent(branchName);
             } else {
                 exit("No need to checkout the current branch.");
             }
@@ -523,6 +574,109 @@ public class Main {
         }
     }
 
+    /** Replaces the working files of commit HEAD with those of COMMIT,
+     *  and makes the index match COMMIT, clearing the staging area.  Only
+     *  files whose blob ids differ between the two commits are checked,
+     *  written or deleted, and subtrees that are equal in both are not
+     *  even read.  Exits before writing anything if untracked work is in
+     *  the way of a file to be written (see checkInTheWay).
+     *  The writes and deletions themselves run in parallel, and any that
+     *  fail are reported together afterwards.
+     * @param head current commit
+     * @param commit commit to check out
+     */
+    private static void checkoutCommit(Commit head, Commit commit) {
+        Index index = Index.load();
+        HashMap<String, String> writes = new HashMap<>();
+        HashMap<String, String> expected = new HashMap<>();
+        List<String> deleted = new ArrayList<>();
+        for (Map.Entry<String, String[]> change
+                 : Tree.diff(head.tree(), commit.tree()).entrySet()) {
+            String k = change.getKey();
+            String from = change.getValue()[0], to = change.getValue()[1];
+            if (to == null) {
+                deleted.add(k);
+            } else {
+                writes.put(k, to);
+                expected.put(k, from);
+            }
+        }
+        checkInTheWay(index, expected, deleted);
+        index.reset(commit.files());
+        updateWorkTree(index, writes, deleted);
+    }
+
+    /** Exits if writing files would destroy untracked work.  EXPECTED
+     *  maps the path of each file to be written to the blob id that HEAD
+     *  has there, or null, and the working files in DELETES, all tracked
+     *  by HEAD, are deleted before anything is written.  A path is in the
+     *  way if its working file holds anything but its blob in HEAD, if it
+     *  is a directory holding any file not in DELETES, or if one of its
+     *  parent directories is a file not in DELETES.
+     * @param index the index, for the ids of working files
+     * @param expected blob ids in HEAD of the files to write
+     * @param deletes files deleted first
+     */
+    private static void checkInTheWay(Index index,
+                                      Map<String, String> expected,
+                                      Collection<String> deletes) {
+        HashSet<String> deleted = new HashSet<>(deletes);
+        for (Map.Entry<String, String> e : expected.entrySet()) {
+            String path = e.getKey();
+            File f = new File(path);
+            boolean inTheWay = false;
+            if (f.isDirectory()) {
+                for (String name : WorkTree.files(path)) {
+                    inTheWay |= !deleted.contains(name);
+                }
+            } else if (f.exists()) {
+                inTheWay = !index.id(f).equals(e.getValue());
+            } else {
+                for (int i = path.indexOf('/'); i >= 0;
+                     i = path.indexOf('/', i + 1)) {
+                    String dir = path.substring(0, i);
+                    inTheWay |= new File(dir).isFile()
+                        && !deleted.contains(dir);
+                }
+            }
+            if (inTheWay) {
+                exit("There is an untracked file in the way; "
+                        + "delete it, or add and commit it first.");
+            }
+        }
+    }
+
+    /** Writes the blobs in WRITES, a map from path to blob id, to the
+     *  working tree and deletes the working files in DELETES, as
+     *  WorkTree.apply does.  Then records the stat data of each file
+     *  written in INDEX, which must already stage it, and saves INDEX.
+     *  If any write or deletion fails, exits listing the failures
+     *  without saving INDEX, so the saved index still matches the
+     *  commit that HEAD names and the files left changed show as
+     *  modified.
+     * @param index the index
+     * @param writes blob ids of the files to write
+     * @param deletes files to delete
+     */
+    private static void updateWorkTree(Index index,
+                                       Map<String, String> writes,
+                                       List<String> deletes) {
+        TreeMap<String, String> failures = WorkTree.apply(writes, deletes);
+        if (!failures.isEmpty()) {
+            StringBuilder msg = new StringBuilder();
+            msg.append("Could not update the working directory:");
+            for (Map.Entry<String, String> failure : failures.entrySet()) {
+                msg.append("\n").append(failure.getKey()).append(": ")
+                    .append(failure.getValue());
+            }
+            exit(msg.toString());
+        }
+        for (Map.Entry<String, String> write : writes.entrySet()) {
+            index.record(new File(write.getKey()), write.getValue());
+        }
+        index.save();
+    }
+
     /** branch command.
      * @param args operands
      * @throws IOException
@@ -533,14 +687,8 @@ public class Main {
                     args[0]));
         } else {
             String name = args[1];
-            File newBranch = Utils.join(GITLET_FOLDER, "branches", name);
-            if (!newBranch.exists()) {
-                File hEAD = Utils.join(GITLET_FOLDER, "branches", "head");
-                Branch headBranch = Utils.readObject(hEAD, Branch.class);
-                Commit head = headBranch.getCommit();
-                Branch branch = new Branch(name, null, head);
-                newBranch.createNewFile();
-                Utils.writeObject(newBranch, branch);
+            if (!Branch.exists(name)) {
+                Branch.setId(name, Branch.headId());
             } else {
                 exit("A branch with that name already exists.");
             }
@@ -557,14 +705,11 @@ public class Main {
                     args[0]));
         } else {
             String name = args[1];
-            File branch = Utils.join(GITLET_FOLDER, "branches", name);
-            if (branch.exists()) {
-                File hEAD = Utils.join(GITLET_FOLDER, "branches", "head");
-                Branch headBranch = Utils.readObject(hEAD, Branch.class);
-                if (headBranch.getHead().equals(name)) {
+            if (Branch.exists(name)) {
+                if (Branch.current().equals(name)) {
                     exit("Cannot remove the current branch.");
                 } else {
-                    branch.delete();
+                    Branch.delete(name);
                 }
             } else {
                 exit("A branch with that name does not exist.");
@@ -581,205 +726,120 @@ public class Main {
             exit(String.format("Incorrect number of arguments for %s",
                     args[0]));
         } else {
-            File hEAD = Utils.join(GITLET_FOLDER, "branches", "head");
-            Branch headBranch = Utils.readObject(hEAD, Branch.class);
-            Commit head = headBranch.getCommit();
-            File commits = Utils.join(GITLET_FOLDER, "commits");
-            String commitname = "";
-            for (File c: commits.listFiles()) {
-                if (c.getName().contains(args[1])) {
-                    commitname = c.getName();
-                }
-            }
-            File com = Utils.join(GITLET_FOLDER, "commits", commitname);
-            if (!com.getName().equals("commits")) {
-                Commit commit = Utils.readObject(com, Commit.class);
-                HashMap<String, String> files = commit.files();
-                for (Map.Entry<String, String> entry : files.entrySet()) {
-                    String k = entry.getKey();
-                    File f = new File(k);
-                    if (f.exists()) {
-                        String contents = Utils.readContentsAsString(f);
-                        if (!head.files().containsKey(k)
-                                || !contents.equals(head.files().get(k))) {
-                            exit("There is an untracked file in the way; "
-                                    + "delete it, or add and commit it first.");
-                        }
-                    }
-                    String v = entry.getValue();
-                    Utils.writeContents(f, v);
-                }
-                for (File f : CWD.listFiles()) {
-                    String name = f.getName();
-                    if (head.files().containsKey(name)
-                            && !files.containsKey(name)) {
-                        File cwdfile = new File(name);
-                        cwdfile.delete();
-                    }
-                }
-                headBranch.setCommit(commit);
-                Utils.writeObject(hEAD, headBranch);
-                clearStage();
-                String thebranch = headBranch.getHead();
-                File branchFile = Utils.join(GITLET_FOLDER,
-                        "branches", thebranch);
-                Branch branch = Utils.readObject(branchFile, Branch.class);
-                branch.setCommit(commit);
-                Utils.writeObject(branchFile, branch);
-            } else {
-                exit("No commit with that id exists.");
-            }
+            Commit head = Branch.headCommit();
+            Commit commit = Commit.load(resolveCommit(args[1]));
+            checkoutCommit(head, commit);
+            Branch.setId(Branch.current(), commit.id());
+        }
+    }
+
+    /** returns the full id of the commit whose id starts with PREFIX,
+     *  looked up in the commit index.  Exits if there is no such commit
+     *  or PREFIX is ambiguous.
+     */
+    private static String resolveCommit(String prefix) {
+        List<String> ids = CommitIndex.resolve(prefix, 2);
+        if (ids.isEmpty()) {
+            exit("No commit with that id exists.");
+        } else if (ids.size() > 1) {
+            exit("Ambiguous commit id.");
         }
+        return ids.get(0);
     }
 
-    /** merge command.
+    /** merge command.  The merged tree is worked out in memory from the
+     *  changes that the head and the given branch each made since their
+     *  split point, so only paths that the given branch changed are
+     *  looked at.  The working tree and the index are then updated once,
+     *  and the result committed.
      * @param args operands
      * @throws IOException
      */
     public static void merge(String[] args) throws IOException {
-        File bRANCH = Utils.join(GITLET_FOLDER, "branches", args[1]);
-        File hEAD = Utils.join(GITLET_FOLDER, "branches", "head");
-        Branch headBranch = Utils.readObject(hEAD, Branch.class);
-        if (!bRANCH.exists()) {
+        if (args.length != 2) {
+            exit("Incorrect operands.");
+        }
+        if (!Branch.exists(args[1])) {
             exit("A branch with that name does not exist.");
         }
-        Branch givenBranch = Utils.readObject(bRANCH, Branch.class);
-        Commit head = headBranch.getCommit();
-        Commit given = givenBranch.getCommit();
+        Commit head = Branch.headCommit();
+        Commit given = Commit.load(Branch.id(args[1]));
         Commit split = split(args[1]);
-        mergeCheckStaged();
-        mergeCheckUntracked(given, head);
-        mergeCheckSplit(split, given, head, args[1], headBranch);
-        HashMap<String, String> givenFiles = given.files();
-        for (Map.Entry<String, String> entry : givenFiles.entrySet()) {
-            String k = entry.getKey();
-            String givenV = entry.getValue();
-            String splitV = split.files().get(k);
-            String curV = head.files().get(k);
-            if (splitV != null && curV != null) {
-                if (!givenV.equals(splitV) && splitV.equals(curV)) {
-                    checkout(new String[]{"checkout", given.id(), "--", k});
-                    add(new String[]{"add", k});
-                } else if (!givenV.equals(splitV) && !curV.equals(splitV)
-                        && !givenV.equals(curV)) {
-                    mergeConflict(curV, givenV, k);
+        Index index = Index.load();
+        mergeCheckStaged(index, head);
+        TreeMap<String, String[]> ours =
+            Tree.diff(split.tree(), head.tree());
+        HashMap<String, String> writes = new HashMap<>();
+        HashMap<String, String> expected = new HashMap<>();
+        List<String> deletes = new ArrayList<>();
+        int conflicts = 0;
+        for (Map.Entry<String, String[]> change
+                 : Tree.diff(split.tree(), given.tree()).entrySet()) {
+            String k = change.getKey();
+            String splitV = change.getValue()[0];
+            String givenV = change.getValue()[1];
+            String curV = ours.containsKey(k) ? ours.get(k)[1] : splitV;
+            if (Objects.equals(curV, givenV)) {
+                continue;
+            }
+            if (Objects.equals(curV, splitV)) {
+                if (givenV == null) {
+                    deletes.add(k);
+                } else {
+                    writes.put(k, givenV);
+                    expected.put(k, curV);
                 }
-            } else if (splitV == null) {
-                if (curV == null) {
-                    checkout(new String[]{"checkout",
-                            given.id(), "--", k});
-                    add(new String[]{"add", k});
-                } else if (!givenV.equals(curV)) {
-                    mergeConflict(curV, givenV, k);
+            } else {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                if (mergeConflict(splitV, curV, givenV, out)) {
+                    conflicts += 1;
                 }
-            }
-        }
-        for (Map.Entry<String, String> entry : split.files().entrySet()) {
-            String k = entry.getKey();
-            String splitV = entry.getValue();
-            String givenV = given.files().get(k);
-            String curV = head.files().get(k);
-            if (curV != null && splitV != null) {
-                if (curV.equals(splitV) && givenV == null) {
-                    rm(new String[]{"rm", k});
-                } else if (givenV == null && !curV.equals(splitV)) {
-                    mergeConflict(curV, "", k);
+                writes.put(k, Blob.save(out.toByteArray()));
+                if (givenV != null) {
+                    expected.put(k, curV);
                 }
-            } else if (curV == null && givenV != null
-                    && !givenV.equals(splitV)) {
-                mergeConflict("", givenV, k);
             }
         }
+        checkInTheWay(index, expected, deletes);
+        mergeCheckSplit(split, given, head, args[1]);
+        for (String k : deletes) {
+            index.remove(k);
+        }
+        for (Map.Entry<String, String> write : writes.entrySet()) {
+            index.stage(write.getKey(), write.getValue());
+        }
+        updateWorkTree(index, writes, deletes);
+        for (int i = 0; i < conflicts; i += 1) {
+            System.out.println("Encountered a merge conflict.");
+        }
         String mergeMSG = "Merged " + args[1]
-                + " into " + headBranch.getHead() + ".";
+                + " into " + Branch.current() + ".";
         commit(new String[]{"commit", mergeMSG}, given.id());
     }
 
-    /** split helper.
+    /** split helper.  Finds the split point of the current branch and
+     *  BRANCH in the commit graph.
      * @param branch branch name
      * @return
      */
     public static Commit split(String branch) {
-        File hEAD = Utils.join(GITLET_FOLDER, "branches", "head");
-        Branch headBranch = Utils.readObject(hEAD, Branch.class);
-        Commit head = headBranch.getCommit();
-        File bRANCH = Utils.join(GITLET_FOLDER, "branches", branch);
-        Branch br = Utils.readObject(bRANCH, Branch.class);
-        while (head.parent() != null) {
-            if (head.parent2() != null) {
-                File p = Utils.join(GITLET_FOLDER, "commits", head.parent2());
-                Commit head2 = Utils.readObject(p, Commit.class);
-                while (head2.parent() != null) {
-                    Commit com = br.getCommit();
-                    File p2 = Utils.join(GITLET_FOLDER,
-                            "commits", head.parent());
-                    Commit parent = Utils.readObject(p2, Commit.class);
-                    if (head2.parent().equals(com.id())) {
-                        return com;
-                    }
-                    while (com.parent() != null) {
-                        if (head2.id().equals(com.parent())) {
-                            return head2;
-                        }
-                        if (head2.parent().equals(com.parent())) {
-                            return parent;
-                        }
-                        File pc = Utils.join(GITLET_FOLDER,
-                                "commits", com.parent());
-                        Commit parentCom = Utils.readObject(pc, Commit.class);
-                        com = parentCom;
-                    }
-                }
-            }
-            Commit com = br.getCommit();
-            File p = Utils.join(GITLET_FOLDER, "commits", head.parent());
-            Commit parent = Utils.readObject(p, Commit.class);
-            if (head.parent().equals(com.id())) {
-                return com;
-            }
-            while (com.parent() != null) {
-                if (head.id().equals(com.parent())) {
-                    return head;
-                }
-                if (head.parent().equals(com.parent())) {
-                    return parent;
-                }
-                File pc = Utils.join(GITLET_FOLDER, "commits", com.parent());
-                Commit parentCom = Utils.readObject(pc, Commit.class);
-                com = parentCom;
-            }
-            head = parent;
+        Trace.Phase phase = Trace.phase("merge-base");
+        try (phase) {
+            CommitGraph graph = CommitGraph.load();
+            String base = graph.mergeBase(Branch.headId(),
+                    Branch.id(branch));
+            return Commit.load(base);
         }
-        return null;
     }
 
-    /** split helper. */
-    public static void mergeCheckStaged() {
-        File sTAGEDA = Utils.join(GITLET_FOLDER, "addition");
-        File sTAGEDR = Utils.join(GITLET_FOLDER, "removal");
-        if (sTAGEDA.listFiles().length > 0
-                || sTAGEDR.listFiles().length > 0) {
-            exit("You have uncommitted changes.");
-        }
-    }
-
-    /** split helper.
-     * @param given given commit
+    /** split helper.  Exits if INDEX stages anything that is not in
+     *  HEAD.
+     * @param index the index
      * @param head current commit
      */
-    public static void mergeCheckUntracked(Commit given, Commit head) {
-        for (Map.Entry<String, String> entry
-                : given.files().entrySet()) {
-            String k = entry.getKey();
-            File f = new File(k);
-            if (f.exists()) {
-                String contents = Utils.readContentsAsString(f);
-                if (!head.files().containsKey(k)
-                        || !contents.equals(head.files().get(k))) {
-                    exit("There is an untracked file in the way; "
-                            + "delete it, or add and commit it first.");
-                }
-            }
+    public static void mergeCheckStaged(Index index, Commit head) {
+        if (!Tree.id(index.files()).equals(head.tree())) {
+            exit("You have uncommitted changes.");
         }
     }
 
@@ -788,63 +848,273 @@ public class Main {
      * @param given given commit
      * @param head current commit
      * @param branchName branch name
-     * @param headBranch current branch
      * @throws IOException
      */
     public static void mergeCheckSplit(Commit split, Commit given,
-                                       Commit head, String branchName,
-                                       Branch headBranch) throws IOException {
-        if (split.id().equals(given.id())) {
+                                       Commit head, String branchName)
+            throws IOException {
+        if (Branch.current().equals(branchName)) {
+            exit("Cannot merge a branch with itself.");
+        } else if (split.id().equals(given.id())) {
             exit("Given branch is an ancestor of the current branch.");
         } else if (split.id().equals(head.id())) {
             String[] op = new String[] {"checkout", branchName};
             checkout(op);
             exit("Current branch fast-forwarded.");
-        } else if (headBranch.getHead().equals(branchName)) {
-            exit("Cannot merge a branch with itself.");
         }
     }
 
-    /** split helper.
-     * @param curV value of current file
-     * @param givenV value of given file
-     * @param k file name
-     * @return
+    /** split helper.  Writes to OUT the merge of versions CURV and
+     *  GIVENV of a file whose version at the split point is SPLITV, each
+     *  a blob id or null if the file is absent.  When both sides have the
+     *  file, the versions are merged line by line (see Diff.merge), so
+     *  that only the regions both sides changed are in conflict.
+     *  Otherwise the whole file is.
+     * @param splitV blob id of split point file, or null if absent
+     * @param curV blob id of current file, or null if absent
+     * @param givenV blob id of given file, or null if absent
+     * @param out where to write the merged file
+     * @return whether there was a conflict
+     * @throws IOException
      */
-    public static void mergeConflict(String curV,
-                                     String givenV,
-                                     String k) throws IOException {
-        System.out.println("Encountered a merge conflict.");
-        String msg1 = "<<<<<<< HEAD\n";
-        String msg2 = curV;
-        String msg3 = "=======\n";
-        String msg4 = givenV;
-        String msg5 = ">>>>>>>\n";
-        String msg = msg1 + msg2 + msg3 + msg4 + msg5;
-        Utils.writeContents(new File(k), msg);
-        add(new String[]{"add", k});
-    }
-
-    /** clear staging area helper. */
-    public static void clearStage() {
-        File add = Utils.join(GITLET_FOLDER, "addition");
-        File rm = Utils.join(GITLET_FOLDER, "removal");
-        File[] addfiles = add.listFiles();
-        File[] rmfiles = rm.listFiles();
-        for (File f : addfiles) {
-            f.delete();
-        }
-        for (File f : rmfiles) {
-            f.delete();
-        }
-    }
-
-    /** exit error.
+    public static boolean mergeConflict(String splitV, String curV,
+                                        String givenV, OutputStream out)
+            throws IOException {
+        byte[] empty = new byte[0];
+        byte[] cur = curV == null ? empty : Blob.read(curV);
+        byte[] gvn = givenV == null ? empty : Blob.read(givenV);
+        if (curV != null && givenV != null) {
+            byte[] base = splitV == null ? empty : Blob.read(splitV);
+            return Diff.merge(new Diff.Lines(base), new Diff.Lines(cur),
+                    new Diff.Lines(gvn), out);
+        }
+        out.write(Diff.OURS.getBytes(StandardCharsets.UTF_8));
+        out.write(cur);
+        out.write(Diff.SEPARATOR.getBytes(StandardCharsets.UTF_8));
+        out.write(gvn);
+        out.write(Diff.THEIRS.getBytes(StandardCharsets.UTF_8));
+        return true;
+    }
+
+    /** diff command.  With no operands, shows how the working files
+     *  tracked in HEAD or the index differ from HEAD; with --staged, how
+     *  the index differs from HEAD; and with two commit ids, how the
+     *  second commit differs from the first.  Files whose blob ids are
+     *  equal are skipped without being read, as are whole subtrees when
+     *  two commits are compared, and working files are hashed only if
+     *  their stat data changed.  The output is a unified diff of each
+     *  changed file, by path.
+     * @param args operands
+     * @throws IOException
+     */
+    public static void diff(String[] args) throws IOException {
+        if (!GITLET_FOLDER.exists()) {
+            exit("Not in an initialized Gitlet directory.");
+        }
+        TreeMap<String, String[]> changes;
+        boolean working = args.length == 1;
+        if (working || args.length == 2 && args[1].equals("--staged")) {
+            Index index = Index.load();
+            HashMap<String, String> head = Branch.headCommit().files();
+            HashMap<String, String> files = index.files();
+            if (working) {
+                files = new HashMap<>();
+                TreeSet<String> paths = new TreeSet<>(head.keySet());
+                paths.addAll(index.files().keySet());
+                for (String path : paths) {
+                    File f = new File(path);
+                    if (f.isFile()) {
+                        files.put(path, index.id(f));
+                    }
+                }
+                index.save();
+            }
+            changes = diffFiles(head, files);
+        } else if (args.length == 3) {
+            Commit from = Commit.load(resolveCommit(args[1]));
+            Commit to = Commit.load(resolveCommit(args[2]));
+            changes = Tree.diff(from.tree(), to.tree());
+        } else {
+            exit("Incorrect operands.");
+            return;
+        }
+        BufferedOutputStream out = new BufferedOutputStream(System.out);
+        for (Map.Entry<String, String[]> change : changes.entrySet()) {
+            String path = change.getKey();
+            String from = change.getValue()[0], to = change.getValue()[1];
+            byte[] newContents;
+            if (to == null) {
+                newContents = null;
+            } else if (working) {
+                newContents = Utils.readContents(new File(path));
+            } else {
+                newContents = Blob.read(to);
+            }
+            Diff.unified(path, from == null ? null : Blob.read(from),
+                    newContents, out);
+        }
+        out.flush();
+    }
+
+    /** returns the files whose blob ids differ between FROM and TO, maps
+     *  from path to blob id.  Each path maps to its ids in FROM and TO,
+     *  null where it is absent. */
+    private static TreeMap<String, String[]> diffFiles(
+            Map<String, String> from, Map<String, String> to) {
+        TreeMap<String, String[]> changes = new TreeMap<>();
+        for (Map.Entry<String, String> e : from.entrySet()) {
+            String id = to.get(e.getKey());
+            if (!e.getValue().equals(id)) {
+                changes.put(e.getKey(), new String[] {e.getValue(), id});
+            }
+        }
+        for (Map.Entry<String, String> e : to.entrySet()) {
+            if (!from.containsKey(e.getKey())) {
+                changes.put(e.getKey(), new String[] {null, e.getValue()});
+            }
+        }
+        return changes;
+    }
+
+    /** blame command.  Shows each line of a file in the head commit
+     *  with the commit that last changed it; see Blame.
+     * @param args operands
+     * @throws IOException
+     */
+    public static void blame(String[] args) throws IOException {
+        if (!GITLET_FOLDER.exists()) {
+            exit("Not in an initialized Gitlet directory.");
+        }
+        if (args.length != 2) {
+            exit("Incorrect operands.");
+        }
+        BufferedOutputStream out = new BufferedOutputStream(System.out);
+        Blame.blame(args[1], out);
+        out.flush();
+    }
+
+    /** gc command.  Packs all objects; see Pack.repack.
+     * @param args operands
+     * @throws IOException
+     */
+    public static void gc(String[] args) throws IOException {
+        if (args.length != 1) {
+            exit(String.format("Incorrect number of arguments for %s",
+                    args[0]));
+        }
+        Pack.repack();
+    }
+
+    /** batch command.  Runs the commands in the file named by the
+     *  operand, or read from the standard input if there is none, one
+     *  per line, in this process.  Words are separated by blanks, and a
+     *  word in double quotes may contain blanks, \" and \\.  Blank lines
+     *  and lines starting with # are skipped.  An error ends only its own
+     *  command and is reported with its line number, as is an unexpected
+     *  exception.
+     * @param args operands
+     * @throws IOException
+     */
+    public static void batch(String[] args) throws IOException {
+        if (args.length > 2) {
+            exit("Incorrect operands.");
+        }
+        if (args.length == 2 && !new File(args[1]).isFile()) {
+            exit("File does not exist.");
+        }
+        try (BufferedReader in = new BufferedReader(args.length == 2
+                 ? new FileReader(args[1], StandardCharsets.UTF_8)
+                 : new InputStreamReader(System.in, StandardCharsets.UTF_8))) {
+            int lineno = 0;
+            for (String line = in.readLine(); line != null;
+                 line = in.readLine()) {
+                lineno += 1;
+                String trimmed = line.strip();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                    continue;
+                }
+                try {
+                    String[] command = words(trimmed);
+                    if (command[0].equals("batch")) {
+                        exit("Cannot nest batch commands.");
+                    }
+                    run(command);
+                } catch (GitletException excp) {
+                    System.out.println("line " + lineno + ": "
+                            + excp.getMessage());
+                } catch (IOException | RuntimeException excp) {
+                    System.out.println("line " + lineno + ": " + excp);
+                }
+            }
+        }
+    }
+
+    /** returns the words of LINE, a command in a batch.  Exits if a
+     *  quotation is not closed. */
+    private static String[] words(String line) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = null;
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i += 1) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    quoted = false;
+                    continue;
+                } else if (c == '\\' && i + 1 < line.length()) {
+                    i += 1;
+                    c = line.charAt(i);
+                }
+                word.append(c);
+            } else if (Character.isWhitespace(c)) {
+                if (word != null) {
+                    words.add(word.toString());
+                    word = null;
+                }
+            } else {
+                if (word == null) {
+                    word = new StringBuilder();
+                }
+                if (c == '"') {
+                    quoted = true;
+                } else {
+                    word.append(c);
+                }
+            }
+        }
+        if (quoted) {
+            exit("Unterminated quotation.");
+        }
+        if (word != null) {
+            words.add(word.toString());
+        }
+        return words.toArray(new String[0]);
+    }
+
+    /** daemon command.  With no operand, serves commands for this
+     *  repository until stopped; see Daemon.  "daemon stop" only gets
+     *  here when no daemon is running.
+     * @param args operands
+     * @throws IOException
+     */
+    public static void daemon(String[] args) throws IOException {
+        if (args.length == 1) {
+            if (!GITLET_FOLDER.exists()) {
+                exit("Not in an initialized Gitlet directory.");
+            }
+            Daemon.serve();
+        } else if (args.length == 2 && args[1].equals("stop")) {
+            exit("No daemon is running.");
+        } else {
+            exit("Incorrect operands.");
+        }
+    }
+
+    /** exit error.  Ends the current command.
      * @param message exit message
      */
     public static void exit(String message) {
-        System.out.println(message);
-        System.exit(0);
+        throw new GitletException(message);
     }
 }
 
@@ -0,0 +1,628 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/** Packed object storage in .gitlet/packs.  The gc command moves loose
+ *  commits and blobs into pack files, storing each blob either whole or
+ *  as a Delta against a similar blob stored before it in the same pack,
+ *  and deflating every entry.  A pack entry holds its kind, the length
+ *  of the object, the offset of its delta base (-1 if it is stored
+ *  whole), and the length and bytes of its compressed data.  Each pack
+ *  has an index holding its object ids in sorted order with their
+ *  offsets.  Both files are memory-mapped and searched in place, so a
+ *  pack is kept under 2 GiB and gc starts a new one when it is full.
+ *  @author Tracy
+ */
+public class Pack {
+
+    /** File referring to the packs folder in .gitlet. */
+    static final File PACK_FOLDER = Utils.join(".gitlet", "packs");
+
+    /** Kind of a pack entry holding a commit. */
+    static final byte COMMIT = 1;
+    /** Kind of a pack entry holding a blob. */
+    static final byte BLOB = 2;
+
+    /** Length of a raw SHA-1 hash. */
+    private static final int HASH_BYTES = Utils.UID_LENGTH / 2;
+    /** Length of an index record: a hash and an offset. */
+    private static final int INDEX_RECORD = HASH_BYTES + Long.BYTES;
+    /** Length of the header of a pack entry. */
+    private static final int HEADER = 1 + Integer.BYTES + Long.BYTES
+        + Integer.BYTES;
+    /** Largest size of a pack, so that it can be mapped whole and the
+     *  offsets of its entries fit in an int. */
+    private static final long MAX_PACK = Integer.MAX_VALUE;
+    /** Largest blob that gc tries to delta-compress.  Larger blobs are
+     *  streamed into the pack whole, without being held in memory. */
+    private static final long MAX_DELTA = 1 << 20;
+    /** Number of preceding blobs tried as delta bases for each blob. */
+    private static final int WINDOW = 10;
+    /** Longest allowed chain of deltas. */
+    private static final int MAX_DEPTH = 16;
+    /** Marks an entry with no delta base. */
+    private static final long NO_BASE = -1;
+    /** Form of the name of a loose object. */
+    private static final Pattern ID =
+        Pattern.compile("[0-9a-f]{" + Utils.UID_LENGTH + "}");
+
+    /** Packs in PACK_FOLDER, loaded on first use. */
+    private static List<Pack> _packs;
+    /** Stamp of PACK_FOLDER when _packs was loaded. */
+    private static Object _packsStamp;
+
+    static {
+        Cache.onClear(() -> _packs = null);
+    }
+
+    /** Mapped index of this pack. */
+    private final ByteBuffer _index;
+    /** Mapped entries of this pack. */
+    private final ByteBuffer _data;
+    /** Number of objects in this pack. */
+    private final int _count;
+
+    /** Maps the pack named NAME from PACK_FOLDER. */
+    private Pack(String name) throws IOException {
+        this(Utils.join(PACK_FOLDER, name + ".idx"),
+             Utils.join(PACK_FOLDER, name + ".pack"));
+    }
+
+    /** Maps the pack with index INDEX and entries DATA. */
+    private Pack(File index, File data) throws IOException {
+        _index = map(index);
+        _data = map(data);
+        _count = _index.capacity() / INDEX_RECORD;
+    }
+
+    /** returns the contents of FILE mapped read-only. */
+    private static MappedByteBuffer map(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        }
+    }
+
+    /** returns all packs, loading them again if PACK_FOLDER has changed
+     *  since they were loaded. */
+    private static synchronized List<Pack> packs() {
+        Object stamp = Cache.stamp(PACK_FOLDER);
+        if (_packs == null || !Objects.equals(stamp, _packsStamp)) {
+            _packsStamp = stamp;
+            _packs = new ArrayList<>();
+            List<String> names = Utils.plainFilenamesIn(PACK_FOLDER);
+            if (names != null) {
+                for (String name : names) {
+                    if (name.endsWith(".idx")) {
+                        try {
+                            _packs.add(new Pack(name.substring(0,
+                                    name.length() - ".idx".length())));
+                        } catch (IOException excp) {
+                            throw new IllegalArgumentException(
+                                    excp.getMessage());
+                        }
+                    }
+                }
+            }
+        }
+        return _packs;
+    }
+
+    /** returns whether object ID is in a pack. */
+    public static boolean contains(String id) {
+        byte[] hash = Utils.fromHex(id);
+        for (Pack pack : packs()) {
+            if (pack.find(hash) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** returns the contents of object ID from the packs, or null if it
+     *  is not packed. */
+    public static byte[] read(String id) {
+        byte[] hash = Utils.fromHex(id);
+        for (Pack pack : packs()) {
+            int i = pack.find(hash);
+            if (i >= 0) {
+                return pack.entry(pack.offset(i));
+            }
+        }
+        return null;
+    }
+
+    /** returns a stream of the contents of blob ID, loose or packed.  A
+     *  loose blob, or a packed one stored whole, is streamed without
+     *  being held in memory.  Only blobs of at most MAX_DELTA bytes are
+     *  stored as deltas, and only those are unpacked whole. */
+    static InputStream open(String id) throws IOException {
+        File blob = Utils.join(Blob.OBJECTS_FOLDER, id);
+        if (blob.exists()) {
+            return Files.newInputStream(blob.toPath());
+        }
+        byte[] hash = Utils.fromHex(id);
+        for (Pack pack : packs()) {
+            int i = pack.find(hash);
+            if (i >= 0) {
+                return pack.stream(pack.offset(i));
+            }
+        }
+        throw new IllegalArgumentException("no such blob: " + id);
+    }
+
+    /** returns the position of HASH in this pack's index, or -1. */
+    private int find(byte[] hash) {
+        int lo = 0, hi = _count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = compare(mid, hash);
+            if (c == 0) {
+                return mid;
+            } else if (c < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return -1;
+    }
+
+    /** returns the comparison of the hash of index record I with HASH. */
+    private int compare(int i, byte[] hash) {
+        for (int k = 0; k < HASH_BYTES; k += 1) {
+            int c = Integer.compare(_index.get(i * INDEX_RECORD + k) & 0xff,
+                                    hash[k] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** returns the offset of the entry of index record I. */
+    private long offset(int i) {
+        return _index.getLong(i * INDEX_RECORD + HASH_BYTES);
+    }
+
+    /** returns the kind of the entry at OFFSET. */
+    private byte kind(long offset) {
+        return _data.get((int) offset);
+    }
+
+    /** returns the length of the object stored at OFFSET, without
+     *  unpacking it. */
+    private int size(long offset) {
+        return _data.getInt((int) offset + 1);
+    }
+
+    /** returns the names of the plain files in DIR that are object ids,
+     *  in order, leaving out such files as the temporaries of an
+     *  interrupted Blob.save. */
+    private static List<String> ids(File dir) {
+        List<String> ids = new ArrayList<>();
+        for (String name : Utils.plainFilenamesIn(dir)) {
+            if (ID.matcher(name).matches()) {
+                ids.add(name);
+            }
+        }
+        return ids;
+    }
+
+    /** returns the object stored at OFFSET, resolving deltas. */
+    private byte[] entry(long offset) {
+        ByteBuffer in = _data.duplicate();
+        in.position((int) offset + 1);
+        int length = in.getInt();
+        long base = in.getLong();
+        byte[] stored = new byte[in.getInt()];
+        in.get(stored);
+        Inflater inflater = new Inflater();
+        inflater.setInput(stored);
+        try {
+            ByteArrayOutputStream data = new ByteArrayOutputStream(length);
+            byte[] buf = new byte[Math.max(length, 1)];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buf);
+                if (n == 0 && !inflater.finished()
+                        && inflater.needsInput()) {
+                    throw new IllegalArgumentException("truncated pack");
+                }
+                data.write(buf, 0, n);
+            }
+            if (base == NO_BASE) {
+                return data.toByteArray();
+            }
+            return Delta.apply(entry(base), data.toByteArray());
+        } catch (DataFormatException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /** returns a stream of the object stored at OFFSET.  An entry stored
+     *  whole is inflated as the stream is read; a delta is resolved in
+     *  memory. */
+    private InputStream stream(long offset) {
+        ByteBuffer in = _data.duplicate();
+        in.position((int) offset + 1 + Integer.BYTES);
+        if (in.getLong() != NO_BASE) {
+            return new ByteArrayInputStream(entry(offset));
+        }
+        int stored = in.getInt();
+        in.limit(in.position() + stored);
+        return new InflaterInputStream(new InputStream() {
+            @Override
+            public int read() {
+                return in.hasRemaining() ? in.get() & 0xff : -1;
+            }
+
+            @Override
+            public int read(byte[] buf, int off, int len) {
+                if (!in.hasRemaining()) {
+                    return -1;
+                }
+                len = Math.min(len, in.remaining());
+                in.get(buf, off, len);
+                return len;
+            }
+        });
+    }
+
+    /** An object being written to a new pack. */
+    private static class Packed {
+        /** Object id. */
+        private String _id;
+        /** Contents, kept while the object is in the delta window. */
+        private byte[] _contents;
+        /** Offset of the object's entry in the new pack. */
+        private long _offset;
+        /** Length of the delta chain ending at this object. */
+        private int _depth;
+    }
+
+    /** gc command.  Moves every loose and packed object into new packs,
+     *  then deletes the loose objects and old packs.  Blobs are ordered
+     *  by the names they have in the trees of the commits and then by
+     *  their sizes on disk or in their pack entries, so each is read
+     *  only once, when it is written.  A blob too large for a pack stays
+     *  loose. */
+    public static void repack() throws IOException {
+        TreeMap<String, Byte> kinds = new TreeMap<>();
+        HashMap<String, Long> sizes = new HashMap<>();
+        List<String> loose = ids(Commit.COMMIT_FOLDER);
+        for (String id : loose) {
+            kinds.put(id, COMMIT);
+        }
+        for (String id : ids(Blob.OBJECTS_FOLDER)) {
+            kinds.put(id, BLOB);
+            sizes.put(id, Utils.join(Blob.OBJECTS_FOLDER, id).length());
+        }
+        for (Pack pack : packs()) {
+            byte[] hash = new byte[HASH_BYTES];
+            for (int i = 0; i < pack._count; i += 1) {
+                pack._index.get(i * INDEX_RECORD, hash);
+                long offset = pack.offset(i);
+                String id = Utils.toHex(hash);
+                kinds.put(id, pack.kind(offset));
+                sizes.putIfAbsent(id, (long) pack.size(offset));
+            }
+        }
+        if (kinds.isEmpty()) {
+            return;
+        }
+
+        HashMap<String, String> names = new HashMap<>();
+        List<String> commits = new ArrayList<>();
+        List<String> blobs = new ArrayList<>();
+        for (Map.Entry<String, Byte> e : kinds.entrySet()) {
+            if (e.getValue() == COMMIT) {
+                commits.add(e.getKey());
+                String tree = Commit.load(e.getKey()).tree();
+                if (names.putIfAbsent(tree, "") == null) {
+                    Tree.names(tree, names);
+                }
+            } else {
+                blobs.add(e.getKey());
+            }
+        }
+        Collections.sort(blobs, (a, b) -> {
+            int c = names.getOrDefault(a, "").compareTo(
+                    names.getOrDefault(b, ""));
+            return c != 0 ? c : Long.compare(sizes.get(b), sizes.get(a));
+        });
+
+        PACK_FOLDER.mkdir();
+        try (Writer out = new Writer(kinds)) {
+            for (String id : commits) {
+                byte[] contents = Commit.read(id);
+                out.reserve(bound(contents.length));
+                out.add(id, contents, null, NO_BASE);
+            }
+            ArrayDeque<Packed> window = new ArrayDeque<>();
+            for (String id : blobs) {
+                long size = sizes.get(id);
+                if (bound(size) > MAX_PACK) {
+                    File blob = Utils.join(Blob.OBJECTS_FOLDER, id);
+                    if (!blob.exists()) {
+                        try (InputStream in = open(id)) {
+                            Files.copy(in, blob.toPath());
+                        }
+                    }
+                    continue;
+                }
+                if (out.reserve(bound(size))) {
+                    window.clear();
+                }
+                if (size > MAX_DELTA) {
+                    try (InputStream in = open(id)) {
+                        out.add(id, size, in);
+                    }
+                    continue;
+                }
+                Packed obj = new Packed();
+                obj._id = id;
+                obj._contents = Blob.read(id);
+                Packed base = null;
+                byte[] delta = null;
+                for (Packed cand : window) {
+                    if (cand._depth >= MAX_DEPTH) {
+                        continue;
+                    }
+                    byte[] d = Delta.create(cand._contents, obj._contents);
+                    if (d.length < obj._contents.length / 2
+                            && (delta == null || d.length < delta.length)) {
+                        base = cand;
+                        delta = d;
+                    }
+                }
+                if (base == null) {
+                    obj._offset = out.add(id, obj._contents, null, NO_BASE);
+                } else {
+                    obj._depth = base._depth + 1;
+                    obj._offset = out.add(id, obj._contents, delta,
+                            base._offset);
+                }
+                window.addFirst(obj);
+                if (window.size() > WINDOW) {
+                    window.removeLast();
+                }
+            }
+            out.finish();
+
+            for (String old : Utils.plainFilenamesIn(PACK_FOLDER)) {
+                int dot = old.indexOf('.');
+                if (!out._names.contains(
+                        dot < 0 ? old : old.substring(0, dot))) {
+                    Utils.join(PACK_FOLDER, old).delete();
+                }
+            }
+            for (String id : loose) {
+                if (out._packed.contains(id)) {
+                    Utils.join(Commit.COMMIT_FOLDER, id).delete();
+                }
+            }
+            for (String id : ids(Blob.OBJECTS_FOLDER)) {
+                if (out._packed.contains(id)) {
+                    Utils.join(Blob.OBJECTS_FOLDER, id).delete();
+                }
+            }
+        }
+        _packs = null;
+    }
+
+    /** returns an upper bound on the length of the pack entry of an
+     *  object of length LENGTH, stored whole or as a delta. */
+    private static long bound(long length) {
+        return HEADER + length + (length >> 10) + 64;
+    }
+
+    /** The packs being written by repack.  Each pack is written to
+     *  temporary files, which are mapped and checked once the pack is
+     *  finished and only then moved into place. */
+    private static class Writer implements Closeable {
+        /** Kinds of the objects being packed, by id. */
+        private final Map<String, Byte> _kinds;
+        /** Names of the packs finished so far. */
+        private final HashSet<String> _names = new HashSet<>();
+        /** Ids of the objects in the packs finished so far. */
+        private final HashSet<String> _packed = new HashSet<>();
+        /** Temporary file holding the current pack, or null. */
+        private File _tmp;
+        /** Channel to _tmp, used to fill in the lengths of entries
+         *  streamed to _out. */
+        private FileChannel _channel;
+        /** Buffered stream to _tmp, whose size is the length of the
+         *  current pack so far. */
+        private DataOutputStream _out;
+        /** Offsets of the objects in the current pack, by id. */
+        private TreeMap<String, Long> _offsets;
+
+        /** A writer of packs of objects whose kinds are in KINDS. */
+        Writer(Map<String, Byte> kinds) throws IOException {
+            _kinds = kinds;
+            start();
+        }
+
+        /** Starts a new, empty pack. */
+        private void start() throws IOException {
+            _tmp = File.createTempFile("pack", ".tmp", PACK_FOLDER);
+            _channel = FileChannel.open(_tmp.toPath(),
+                    StandardOpenOption.WRITE);
+            _out = new DataOutputStream(new BufferedOutputStream(
+                    Channels.newOutputStream(_channel)));
+            _offsets = new TreeMap<>();
+        }
+
+        /** Makes room for an entry of at most LENGTH bytes, finishing the
+         *  current pack and starting a new one if it cannot hold the
+         *  entry.
+         * @return whether a new pack was started
+         */
+        boolean reserve(long length) throws IOException {
+            if (_out.size() + length <= MAX_PACK || _offsets.isEmpty()) {
+                return false;
+            }
+            finish();
+            start();
+            return true;
+        }
+
+        /** Writes an entry for object ID with contents CONTENTS to the
+         *  current pack.  If DELTA is not null, the entry stores DELTA
+         *  against the entry at offset BASE instead of CONTENTS.
+         * @return the offset of the entry
+         */
+        long add(String id, byte[] contents, byte[] delta, long base)
+                throws IOException {
+            long offset = _out.size();
+            byte[] stored = deflate(delta == null ? contents : delta);
+            _out.writeByte(_kinds.get(id));
+            _out.writeInt(contents.length);
+            _out.writeLong(base);
+            _out.writeInt(stored.length);
+            _out.write(stored);
+            _offsets.put(id, offset);
+            return offset;
+        }
+
+        /** Writes an entry for object ID, whose LENGTH bytes of contents
+         *  are read from IN, storing it whole.  The contents are
+         *  deflated as they are read, and the length of the result is
+         *  filled in afterwards.
+         * @return the offset of the entry
+         */
+        long add(String id, long length, InputStream in)
+                throws IOException {
+            long offset = _out.size();
+            _out.writeByte(_kinds.get(id));
+            _out.writeInt((int) length);
+            _out.writeLong(NO_BASE);
+            _out.writeInt(0);
+            Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+            try {
+                DeflaterOutputStream data =
+                    new DeflaterOutputStream(_out, deflater, 1 << 16);
+                in.transferTo(data);
+                data.finish();
+            } finally {
+                deflater.end();
+            }
+            _out.flush();
+            _channel.write(ByteBuffer.allocate(Integer.BYTES)
+                    .putInt(0, (int) (_out.size() - offset - HEADER)),
+                    offset + HEADER - Integer.BYTES);
+            _offsets.put(id, offset);
+            return offset;
+        }
+
+        /** Finishes the current pack: writes its index, checks that the
+         *  pack and index read back with every object at its offset, and
+         *  moves both into place.  Does nothing if the pack is empty. */
+        void finish() throws IOException {
+            _out.close();
+            if (_offsets.isEmpty()) {
+                _tmp.delete();
+                _tmp = null;
+                return;
+            }
+            String name = "pack-"
+                + Utils.sha1(String.join("", _offsets.keySet()));
+            File tmpIndex = Utils.join(PACK_FOLDER, name + ".idx.tmp");
+            try (DataOutputStream index = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(
+                            tmpIndex.toPath())))) {
+                for (Map.Entry<String, Long> e : _offsets.entrySet()) {
+                    index.write(Utils.fromHex(e.getKey()));
+                    index.writeLong(e.getValue());
+                }
+            }
+            try {
+                check(new Pack(tmpIndex, _tmp), name);
+                Files.move(_tmp.toPath(),
+                        Utils.join(PACK_FOLDER, name + ".pack").toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+                Files.move(tmpIndex.toPath(),
+                        Utils.join(PACK_FOLDER, name + ".idx").toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                tmpIndex.delete();
+            }
+            _tmp = null;
+            _names.add(name);
+            _packed.addAll(_offsets.keySet());
+        }
+
+        /** Checks that PACK, just written under the name NAME, holds
+         *  every object of the current pack at its offset, with its kind.
+         *  Throws IOException if not. */
+        private void check(Pack pack, String name) throws IOException {
+            if (pack._count != _offsets.size()
+                    || pack._data.capacity() != _out.size()) {
+                throw new IOException("gc wrote a bad pack: " + name);
+            }
+            for (Map.Entry<String, Long> e : _offsets.entrySet()) {
+                int i = pack.find(Utils.fromHex(e.getKey()));
+                if (i < 0 || pack.offset(i) != e.getValue()
+                        || pack.kind(e.getValue()) != _kinds.get(e.getKey())) {
+                    throw new IOException("gc wrote a bad pack: " + name);
+                }
+            }
+        }
+
+        /** Deletes the current pack if it was not finished. */
+        @Override
+        public void close() throws IOException {
+            if (_tmp != null) {
+                _out.close();
+                _tmp.delete();
+            }
+        }
+    }
+
+    /** returns DATA compressed with a Deflater. */
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        deflater.setInput(data);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[1 << 13];
+        while (!deflater.finished()) {
+            out.write(buf, 0, deflater.deflate(buf));
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+}
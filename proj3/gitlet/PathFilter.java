@@ -0,0 +1,81 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.TreeSet;
+
+/** Bloom filters of the paths that a commit changed.  A filter answers
+ *  whether a path may have changed: "no" is always right, while "yes"
+ *  is wrong for about one path in a hundred, so that history limited to
+ *  one path can pass over most commits without reading them.  A filter
+ *  holds each changed file and each directory above it, with 10 bits per
+ *  path and 7 hash functions.  A commit that changed more than MAX_PATHS
+ *  paths gets an empty filter, which answers "yes" to every path.
+ *  @author Tracy
+ */
+class PathFilter {
+
+    /** Most paths that a filter is built for. */
+    static final int MAX_PATHS = 512;
+    /** Bits per path. */
+    private static final int BITS_PER_PATH = 10;
+    /** Number of hash functions. */
+    private static final int HASHES = 7;
+    /** Smallest filter, in bytes. */
+    private static final int MIN_BYTES = 8;
+
+    /** returns the filter holding CHANGED, the paths of the files that a
+     *  commit changed, and all directories above them. */
+    static byte[] build(Collection<String> changed) {
+        TreeSet<String> paths = new TreeSet<>();
+        for (String path : changed) {
+            for (int i = path.indexOf('/'); i >= 0;
+                 i = path.indexOf('/', i + 1)) {
+                paths.add(path.substring(0, i));
+            }
+            paths.add(path);
+        }
+        if (paths.size() > MAX_PATHS) {
+            return new byte[0];
+        }
+        byte[] filter = new byte[Math.max(MIN_BYTES,
+                (paths.size() * BITS_PER_PATH + 7) / 8)];
+        for (String path : paths) {
+            long bits = 8L * filter.length;
+            int h1 = path.hashCode(), h2 = fnv(path);
+            for (int k = 0; k < HASHES; k += 1) {
+                int bit = (int) Math.floorMod(h1 + (long) k * h2, bits);
+                filter[bit / 8] |= 1 << (bit % 8);
+            }
+        }
+        return filter;
+    }
+
+    /** returns false if PATH, a file or directory, is certainly not in
+     *  FILTER, and true if it may be. */
+    static boolean mayContain(byte[] filter, String path) {
+        if (filter.length == 0) {
+            return true;
+        }
+        long bits = 8L * filter.length;
+        int h1 = path.hashCode(), h2 = fnv(path);
+        for (int k = 0; k < HASHES; k += 1) {
+            int bit = (int) Math.floorMod(h1 + (long) k * h2, bits);
+            if ((filter[bit / 8] & (1 << (bit % 8))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** returns the 32-bit FNV-1a hash of the UTF-8 encoding of PATH, made
+     *  odd so that it is never zero, which would send every probe to the
+     *  same bit. */
+    private static int fnv(String path) {
+        int h = 0x811c9dc5;
+        for (byte b : path.getBytes(StandardCharsets.UTF_8)) {
+            h = (h ^ (b & 0xff)) * 0x01000193;
+        }
+        return h | 1;
+    }
+}
@@ -0,0 +1,324 @@
+package gitlet;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** Opt-in instrumentation of a command.  Tracing is turned on by a
+ *  leading --trace (or --trace=text) or --trace=json argument, or by
+ *  setting the environment variable GITLET_TRACE to text or json.  While
+ *  it is on, the command's phases are timed and its I/O counted, and
+ *  when the command ends a report goes to the standard error, as text or
+ *  as one JSON object.
+ *
+ *  When a flight recording is running, phases also become JFR events,
+ *  gitlet.Phase, and each command becomes a gitlet.Command event
+ *  carrying the counters, so the recording shows gitlet's work next to
+ *  GC and other JVM activity whether or not --trace is given.  All
+ *  counters may be updated from worker threads; the time of a phase is
+ *  summed over the threads that ran it.
+ *  @author Tracy
+ */
+class Trace {
+
+    /** Environment variable that turns tracing on. */
+    private static final String VARIABLE = "GITLET_TRACE";
+
+    /** Output formats. */
+    private enum Format { TEXT, JSON }
+
+    /** JFR event for one run of a phase. */
+    @Name("gitlet.Phase")
+    @Label("Gitlet Phase")
+    @Category("Gitlet")
+    static class PhaseEvent extends Event {
+        /** Name of the phase. */
+        @Label("Phase")
+        private String _phase;
+    }
+
+    /** JFR event for one command. */
+    @Name("gitlet.Command")
+    @Label("Gitlet Command")
+    @Category("Gitlet")
+    static class CommandEvent extends Event {
+        /** The command's name. */
+        @Label("Command")
+        private String _command;
+        /** Bytes read from files. */
+        @Label("Bytes Read")
+        private long _bytesRead;
+        /** Bytes written to files. */
+        @Label("Bytes Written")
+        private long _bytesWritten;
+        /** Files opened. */
+        @Label("Files Opened")
+        private long _filesOpened;
+        /** Objects decoded from their stored form. */
+        @Label("Objects Deserialized")
+        private long _objectsDeserialized;
+        /** Lookups answered from a cache. */
+        @Label("Cache Hits")
+        private long _cacheHits;
+        /** Lookups that missed a cache. */
+        @Label("Cache Misses")
+        private long _cacheMisses;
+    }
+
+    /** A running phase, to be closed when it ends. */
+    static class Phase implements AutoCloseable {
+        /** Name of the phase. */
+        private final String _name;
+        /** Value of System.nanoTime() when the phase began. */
+        private final long _start;
+        /** JFR event for the phase, or null. */
+        private final PhaseEvent _event;
+
+        /** A phase named NAME, reported to JFR as EVENT unless it is
+         *  null. */
+        Phase(String name, PhaseEvent event) {
+            _name = name;
+            _event = event;
+            _start = System.nanoTime();
+            if (event != null) {
+                event.begin();
+            }
+        }
+
+        @Override
+        public void close() {
+            if (_format != null) {
+                record(_name, System.nanoTime() - _start);
+            }
+            if (_event != null) {
+                _event._phase = _name;
+                _event.commit();
+            }
+        }
+    }
+
+    /** Phase returned when there is nothing to record. */
+    private static final Phase NONE = new Phase("", null) {
+        @Override
+        public void close() {
+        }
+    };
+
+    /** Output format, or null if tracing is off. */
+    private static Format _format;
+    /** True iff a flight recorder is running, so that events are worth
+     *  creating.  Checked first, since loading the event classes costs
+     *  more than most commands. */
+    private static boolean _jfr;
+    /** True iff counters are being kept, for the report or for JFR. */
+    private static boolean _counting;
+
+    /** Bytes read from files. */
+    private static final LongAdder BYTES_READ = new LongAdder();
+    /** Bytes written to files. */
+    private static final LongAdder BYTES_WRITTEN = new LongAdder();
+    /** Files opened. */
+    private static final LongAdder FILES_OPENED = new LongAdder();
+    /** Objects decoded from their stored form. */
+    private static final LongAdder DESERIALIZED = new LongAdder();
+    /** Lookups answered from a cache. */
+    private static final LongAdder CACHE_HITS = new LongAdder();
+    /** Lookups that missed a cache. */
+    private static final LongAdder CACHE_MISSES = new LongAdder();
+
+    /** Calls and total nanoseconds of each phase, by name. */
+    private static final TreeMap<String, long[]> PHASES = new TreeMap<>();
+
+    /** returns ARGS without any leading trace options, turning tracing on
+     *  as they or GITLET_TRACE ask.  A trace option is --trace,
+     *  --trace=text or --trace=json; exits on any other --trace=FORMAT. */
+    static String[] configure(String[] args) {
+        String env = System.getenv(VARIABLE);
+        if (env != null) {
+            _format = env.equalsIgnoreCase("json") ? Format.JSON
+                : env.isEmpty() || env.equals("0") ? null : Format.TEXT;
+        }
+        int i = 0;
+        for (; i < args.length && (args[i].equals("--trace")
+                                   || args[i].startsWith("--trace="));
+             i += 1) {
+            switch (args[i]) {
+            case "--trace":
+            case "--trace=text":
+                _format = Format.TEXT;
+                break;
+            case "--trace=json":
+                _format = Format.JSON;
+                break;
+            default:
+                Main.exit("Unknown trace format.");
+            }
+        }
+        List<String> rest = new ArrayList<>();
+        for (; i < args.length; i += 1) {
+            rest.add(args[i]);
+        }
+        return rest.toArray(new String[0]);
+    }
+
+    /** returns whether tracing is on. */
+    static boolean enabled() {
+        return _format != null;
+    }
+
+    /** Starts tracing a new command, clearing all counters. */
+    static void start() {
+        _jfr = FlightRecorder.isInitialized();
+        _counting = _format != null || _jfr && new CommandEvent().isEnabled();
+        for (LongAdder counter : new LongAdder[] {BYTES_READ, BYTES_WRITTEN,
+                FILES_OPENED, DESERIALIZED, CACHE_HITS, CACHE_MISSES}) {
+            counter.reset();
+        }
+        synchronized (PHASES) {
+            PHASES.clear();
+        }
+    }
+
+    /** returns a new phase named NAME, which records its time when it is
+     *  closed.  Callers declare it before the try statement that closes
+     *  it, as in "Phase phase = phase(NAME); try (phase) { ... }", since
+     *  the body never refers to it. */
+    static Phase phase(String name) {
+        PhaseEvent event = _jfr ? new PhaseEvent() : null;
+        if (event != null && !event.isEnabled()) {
+            event = null;
+        }
+        if (event == null && _format == null) {
+            return NONE;
+        }
+        return new Phase(name, event);
+    }
+
+    /** Records that a file was opened. */
+    static void opened() {
+        if (_counting) {
+            FILES_OPENED.increment();
+        }
+    }
+
+    /** Records that N bytes were read from files. */
+    static void read(long n) {
+        if (_counting) {
+            BYTES_READ.add(n);
+        }
+    }
+
+    /** Records that N bytes were written to files. */
+    static void written(long n) {
+        if (_counting) {
+            BYTES_WRITTEN.add(n);
+        }
+    }
+
+    /** Records that an object was decoded from its stored form. */
+    static void deserialized() {
+        if (_counting) {
+            DESERIALIZED.increment();
+        }
+    }
+
+    /** Records a cache lookup, which succeeded iff HIT. */
+    static void cache(boolean hit) {
+        if (_counting) {
+            (hit ? CACHE_HITS : CACHE_MISSES).increment();
+        }
+    }
+
+    /** Adds a run of NANOS nanoseconds to phase NAME. */
+    private static void record(String name, long nanos) {
+        synchronized (PHASES) {
+            long[] phase = PHASES.computeIfAbsent(name, k -> new long[2]);
+            phase[0] += 1;
+            phase[1] += nanos;
+        }
+    }
+
+    /** Ends the trace of COMMAND, which took NANOS nanoseconds, emitting
+     *  its JFR event and writing the report to OUT if tracing is on. */
+    static void finish(String command, long nanos, PrintStream out) {
+        CommandEvent event = _jfr ? new CommandEvent() : null;
+        if (event != null && event.shouldCommit()) {
+            event._command = command;
+            event._bytesRead = BYTES_READ.sum();
+            event._bytesWritten = BYTES_WRITTEN.sum();
+            event._filesOpened = FILES_OPENED.sum();
+            event._objectsDeserialized = DESERIALIZED.sum();
+            event._cacheHits = CACHE_HITS.sum();
+            event._cacheMisses = CACHE_MISSES.sum();
+            event.commit();
+        }
+        if (_format == Format.JSON) {
+            out.println(json(command, nanos));
+        } else if (_format == Format.TEXT) {
+            out.print(text(command, nanos));
+        }
+        out.flush();
+    }
+
+    /** returns the text report on COMMAND, which took NANOS
+     *  nanoseconds. */
+    private static String text(String command, long nanos) {
+        StringBuilder out = new StringBuilder();
+        out.append(format("trace: %s took %.3f ms%n", command,
+                nanos / 1e6));
+        out.append(format("  %-16s %8s %12s%n",
+                "phase", "calls", "total ms"));
+        synchronized (PHASES) {
+            for (Map.Entry<String, long[]> e : PHASES.entrySet()) {
+                out.append(format("  %-16s %8d %12.3f%n", e.getKey(),
+                        e.getValue()[0], e.getValue()[1] / 1e6));
+            }
+        }
+        out.append(format("  bytes read %d, bytes written %d, "
+                + "files opened %d%n", BYTES_READ.sum(),
+                BYTES_WRITTEN.sum(), FILES_OPENED.sum()));
+        out.append(format("  objects deserialized %d, cache hits %d,"
+                + " cache misses %d%n", DESERIALIZED.sum(),
+                CACHE_HITS.sum(), CACHE_MISSES.sum()));
+        return out.toString();
+    }
+
+    /** returns the JSON report on COMMAND, which took NANOS
+     *  nanoseconds. */
+    private static String json(String command, long nanos) {
+        StringBuilder out = new StringBuilder();
+        out.append("{\"command\":\"").append(command.replace("\\", "\\\\")
+                .replace("\"", "\\\"")).append("\",");
+        out.append(format("\"ms\":%.3f,\"phases\":{", nanos / 1e6));
+        synchronized (PHASES) {
+            String sep = "";
+            for (Map.Entry<String, long[]> e : PHASES.entrySet()) {
+                out.append(format("%s\"%s\":{\"calls\":%d,"
+                        + "\"ms\":%.3f}", sep, e.getKey(), e.getValue()[0],
+                        e.getValue()[1] / 1e6));
+                sep = ",";
+            }
+        }
+        out.append(format("},\"bytesRead\":%d,\"bytesWritten\":%d,"
+                + "\"filesOpened\":%d,\"objectsDeserialized\":%d,"
+                + "\"cacheHits\":%d,\"cacheMisses\":%d}", BYTES_READ.sum(),
+                BYTES_WRITTEN.sum(), FILES_OPENED.sum(), DESERIALIZED.sum(),
+                CACHE_HITS.sum(), CACHE_MISSES.sum()));
+        return out.toString();
+    }
+
+    /** returns ARGS formatted by FORMAT as by String.format, with the
+     *  decimal point that JSON needs whatever the default locale. */
+    private static String format(String format, Object... args) {
+        return String.format(Locale.ROOT, format, args);
+    }
+}
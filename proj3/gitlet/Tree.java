@@ -0,0 +1,269 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** Tree objects, which record the contents of one directory.  A tree is
+ *  stored in the object store like a blob, under the SHA-1 of its
+ *  encoding, which has one line per entry:
+ *  <pre>
+ *  blob ID NAME   (a file)
+ *  tree ID NAME   (a subdirectory)</pre>
+ *  Since a tree's id hashes the ids of its children, two directories
+ *  with the same contents share one tree, and comparing the ids of two
+ *  trees tells whether anything below them differs.  Paths are relative
+ *  to the working directory and always separated by '/'.
+ *  @author Tracy
+ */
+class Tree {
+
+    /** Kind of an entry for a file. */
+    private static final String BLOB = "blob";
+    /** Kind of an entry for a subdirectory. */
+    private static final String TREE = "tree";
+
+    /** Entries of recently read trees, by id. */
+    private static final Map<String, TreeMap<String, String>> READ =
+        Cache.lru(4096);
+
+    /** returns the id of the tree holding FILES, a map from path to blob
+     *  id, storing it and any of its subtrees not already stored. */
+    static String write(Map<String, String> files) {
+        Trace.Phase phase = Trace.phase("tree-write");
+        try (phase) {
+            return build(new TreeMap<>(files), true);
+        }
+    }
+
+    /** returns the id that the tree holding FILES, a map from path to
+     *  blob id, would have, without storing anything. */
+    static String id(Map<String, String> files) {
+        return build(new TreeMap<>(files), false);
+    }
+
+    /** returns the id of the tree holding FILES, whose paths are
+     *  relative to that tree, storing it and its subtrees iff STORE. */
+    private static String build(NavigableMap<String, String> files,
+                                boolean store) {
+        StringBuilder out = new StringBuilder();
+        String path = files.isEmpty() ? null : files.firstKey();
+        while (path != null) {
+            int slash = path.indexOf('/');
+            if (slash < 0) {
+                out.append(BLOB).append(' ').append(files.get(path))
+                    .append(' ').append(path).append('\n');
+                path = files.higherKey(path);
+            } else {
+                String dir = path.substring(0, slash);
+                TreeMap<String, String> sub = new TreeMap<>();
+                for (Map.Entry<String, String> e
+                         : files.subMap(dir + "/", dir + "0").entrySet()) {
+                    sub.put(e.getKey().substring(slash + 1), e.getValue());
+                }
+                out.append(TREE).append(' ').append(build(sub, store))
+                    .append(' ').append(dir).append('\n');
+                path = files.ceilingKey(dir + "0");
+            }
+        }
+        byte[] encoding = out.toString().getBytes(StandardCharsets.UTF_8);
+        return store ? Blob.save(encoding) : Blob.id(encoding);
+    }
+
+    /** returns the entries of the tree with id ID, or no entries if ID is
+     *  null.  Each name maps to the kind and id of its entry, as a
+     *  string "KIND ID".  The result must not be modified. */
+    private static TreeMap<String, String> entries(String id) {
+        if (id == null) {
+            return new TreeMap<>();
+        }
+        TreeMap<String, String> entries = READ.get(id);
+        Trace.cache(entries != null);
+        if (entries != null) {
+            return entries;
+        }
+        entries = new TreeMap<>();
+        String encoding = new String(Blob.read(id), StandardCharsets.UTF_8);
+        int start = 0;
+        while (start < encoding.length()) {
+            int end = encoding.indexOf('\n', start);
+            int split = start + TREE.length() + 1 + Utils.UID_LENGTH;
+            entries.put(encoding.substring(split + 1, end),
+                    encoding.substring(start, split));
+            start = end + 1;
+        }
+        READ.put(id, entries);
+        Trace.deserialized();
+        return entries;
+    }
+
+    /** returns the entry for PATH, a file or directory, below the tree
+     *  with id ID, as a string "KIND ID", or null if there is none or ID
+     *  is null.  Only the trees along PATH are read. */
+    static String find(String id, String path) {
+        String entry = id == null ? null : TREE + " " + id;
+        for (String name : path.split("/")) {
+            String tree = child(entry, TREE);
+            if (tree == null) {
+                return null;
+            }
+            entry = entries(tree).get(name);
+        }
+        return entry;
+    }
+
+    /** returns the blob id of file PATH below the tree with id ID, or
+     *  null if there is no such file or ID is null. */
+    static String blob(String id, String path) {
+        return child(find(id, path), BLOB);
+    }
+
+    /** returns the blob ids of all files below the tree with id ID, by
+     *  path. */
+    static HashMap<String, String> files(String id) {
+        HashMap<String, String> files = new HashMap<>();
+        files(id, "", files);
+        return files;
+    }
+
+    /** Adds the blob ids of all files below the tree with id ID to FILES,
+     *  under their paths prefixed by PREFIX. */
+    private static void files(String id, String prefix,
+                              Map<String, String> files) {
+        for (Map.Entry<String, String> e : entries(id).entrySet()) {
+            String kind = e.getValue().substring(0, TREE.length());
+            String child = e.getValue().substring(TREE.length() + 1);
+            if (kind.equals(TREE)) {
+                files(child, prefix + e.getKey() + "/", files);
+            } else {
+                files.put(prefix + e.getKey(), child);
+            }
+        }
+    }
+
+    /** Adds to NAMES the name of each file and directory below the tree
+     *  with id ID, by blob or tree id, keeping any name an id already
+     *  has.  A subtree whose id already has a name is not read again, so
+     *  however many trees share it, it is read once. */
+    static void names(String id, Map<String, String> names) {
+        for (Map.Entry<String, String> e : entries(id).entrySet()) {
+            String child = e.getValue().substring(TREE.length() + 1);
+            if (names.putIfAbsent(child, e.getKey()) == null
+                    && e.getValue().startsWith(TREE)) {
+                names(child, names);
+            }
+        }
+    }
+
+    /** returns the files that differ between the trees with ids FROM and
+     *  TO, either of which may be null for an empty tree.  Each path maps
+     *  to its blob ids in FROM and TO, null where it is absent.  Subtrees
+     *  with equal ids are skipped without being read. */
+    static TreeMap<String, String[]> diff(String from, String to) {
+        Trace.Phase phase = Trace.phase("tree-diff");
+        try (phase) {
+            TreeMap<String, String[]> changes = new TreeMap<>();
+            diff(from, to, "", changes);
+            return changes;
+        }
+    }
+
+    /** Adds the differences between the trees with ids FROM and TO, whose
+     *  paths are prefixed by PREFIX, to CHANGES. */
+    private static void diff(String from, String to, String prefix,
+                             TreeMap<String, String[]> changes) {
+        if (from != null && from.equals(to)) {
+            return;
+        }
+        TreeMap<String, String> a = entries(from), b = entries(to);
+        TreeSet<String> names = new TreeSet<>(a.keySet());
+        names.addAll(b.keySet());
+        for (String name : names) {
+            String x = a.get(name), y = b.get(name);
+            if (x != null && x.equals(y)) {
+                continue;
+            }
+            String xTree = child(x, TREE), yTree = child(y, TREE);
+            if (xTree != null || yTree != null) {
+                diff(xTree, yTree, prefix + name + "/", changes);
+            }
+            String xBlob = child(x, BLOB), yBlob = child(y, BLOB);
+            if (xBlob != null || yBlob != null) {
+                changes.put(prefix + name, new String[] {xBlob, yBlob});
+            }
+        }
+    }
+
+    /** returns the files that differ between the tree with id FROM,
+     *  which may be null for an empty tree, and FILES, a map from path to
+     *  blob id, as for diff(FROM, TO).  A subtree of FROM is skipped
+     *  without being read if it has the id that the files below its
+     *  directory in FILES would give. */
+    static TreeMap<String, String[]> diff(String from,
+                                          Map<String, String> files) {
+        Trace.Phase phase = Trace.phase("tree-diff");
+        try (phase) {
+            TreeMap<String, String[]> changes = new TreeMap<>();
+            diffFiles(from, new TreeMap<>(files), "", changes);
+            return changes;
+        }
+    }
+
+    /** Adds the differences between the tree with id FROM and FILES,
+     *  whose paths are relative to that tree and prefixed by PREFIX in
+     *  CHANGES, to CHANGES. */
+    private static void diffFiles(String from,
+                                  NavigableMap<String, String> files,
+                                  String prefix,
+                                  TreeMap<String, String[]> changes) {
+        TreeMap<String, String> a = entries(from), b = new TreeMap<>();
+        HashMap<String, NavigableMap<String, String>> dirs = new HashMap<>();
+        String path = files.isEmpty() ? null : files.firstKey();
+        while (path != null) {
+            int slash = path.indexOf('/');
+            if (slash < 0) {
+                b.put(path, BLOB + " " + files.get(path));
+                path = files.higherKey(path);
+            } else {
+                String dir = path.substring(0, slash);
+                TreeMap<String, String> sub = new TreeMap<>();
+                for (Map.Entry<String, String> e
+                         : files.subMap(dir + "/", dir + "0").entrySet()) {
+                    sub.put(e.getKey().substring(slash + 1), e.getValue());
+                }
+                dirs.put(dir, sub);
+                b.put(dir, TREE + " " + build(sub, false));
+                path = files.ceilingKey(dir + "0");
+            }
+        }
+        TreeSet<String> names = new TreeSet<>(a.keySet());
+        names.addAll(b.keySet());
+        for (String name : names) {
+            String x = a.get(name), y = b.get(name);
+            if (x != null && x.equals(y)) {
+                continue;
+            }
+            String xTree = child(x, TREE), yTree = child(y, TREE);
+            if (xTree != null || yTree != null) {
+                diffFiles(xTree, yTree == null ? new TreeMap<>()
+                          : dirs.get(name), prefix + name + "/", changes);
+            }
+            String xBlob = child(x, BLOB), yBlob = child(y, BLOB);
+            if (xBlob != null || yBlob != null) {
+                changes.put(prefix + name, new String[] {xBlob, yBlob});
+            }
+        }
+    }
+
+    /** returns the id in ENTRY, a string "KIND ID", if ENTRY is not null
+     *  and has kind KIND, and otherwise null. */
+    private static String child(String entry, String kind) {
+        if (entry == null || !entry.startsWith(kind)) {
+            return null;
+        }
+        return entry.substring(kind.length() + 1);
+    }
+}
@@ -9,14 +9,22 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Formatter;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 /** Assorted utilities.
@@ -29,6 +37,17 @@ class Utils {
     /** The length of a complete SHA-1 UID as a hexadecimal numeral. */
     static final int UID_LENGTH = 40;
 
+    /** Hexadecimal digits, by value. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** Size of the buffers that file contents are streamed through. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Each thread's direct buffer for streaming file contents, allocated
+     *  once and reused, so hashing does not churn the heap. */
+    private static final ThreadLocal<ByteBuffer> BUFFER =
+        ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
@@ -43,22 +62,109 @@ class Utils {
                     throw new IllegalArgumentException("improper type to sha1");
                 }
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
+            return toHex(md.digest());
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    /** Returns the SHA-1 hash of the contents of FILE, which is streamed
+     *  through this thread's buffer, so files of any size take constant
+     *  memory. */
+    static String sha1(File file) {
+        return copyAndHash(file, null);
+    }
+
+    /** Copies the contents of FROM to TO, creating or replacing it, and
+     *  returns their SHA-1 hash.  The contents are read once, through
+     *  this thread's direct buffer, and never held whole in memory.  If
+     *  TO is null, only hashes.  Throws IllegalArgumentException in case
+     *  of problems. */
+    static String copyAndHash(File from, File to) {
+        Trace.Phase phase = Trace.phase("hash");
+        try (phase;
+             FileChannel in = FileChannel.open(from.toPath());
+             FileChannel out = to == null ? null
+                 : FileChannel.open(to.toPath(), StandardOpenOption.WRITE,
+                         StandardOpenOption.CREATE,
+                         StandardOpenOption.TRUNCATE_EXISTING)) {
+            Trace.opened();
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            ByteBuffer buf = BUFFER.get();
+            buf.clear();
+            while (in.read(buf) != -1) {
+                Trace.read(buf.position());
+                buf.flip();
+                if (out != null) {
+                    buf.mark();
+                    Trace.written(buf.remaining());
+                    while (buf.hasRemaining()) {
+                        out.write(buf);
+                    }
+                    buf.reset();
+                }
+                md.update(buf);
+                buf.clear();
+            }
+            if (out != null) {
+                Trace.opened();
             }
-            return result.toString();
+            return toHex(md.digest());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
         } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException("System does not support SHA-1");
         }
     }
 
+    /** Copies the contents of FROM to TO, creating or replacing it.  The
+     *  copy is made with FileChannel.transferTo, which lets the operating
+     *  system move the bytes without bringing them into the JVM.  Throws
+     *  IllegalArgumentException in case of problems. */
+    static void copy(File from, File to) {
+        try (FileChannel in = FileChannel.open(from.toPath());
+             FileChannel out = FileChannel.open(to.toPath(),
+                     StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            for (long pos = 0; pos < size;) {
+                pos += in.transferTo(pos, size - pos, out);
+            }
+            Trace.opened();
+            Trace.opened();
+            Trace.read(size);
+            Trace.written(size);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
     /** Returns the SHA-1 hash of the concatenation of the strings in
      *  VALS. */
     static String sha1(List<Object> vals) {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /** Returns the hexadecimal numeral for the bytes in BYTES. */
+    static String toHex(byte[] bytes) {
+        char[] result = new char[2 * bytes.length];
+        for (int i = 0; i < bytes.length; i += 1) {
+            result[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            result[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(result);
+    }
+
+    /** Returns the bytes denoted by the hexadecimal numeral HEX. */
+    static byte[] fromHex(String hex) {
+        byte[] result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = (byte) ((Character.digit(hex.charAt(2 * i), 16) << 4)
+                                | Character.digit(hex.charAt(2 * i + 1), 16));
+        }
+        return result;
+    }
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
@@ -94,7 +200,10 @@ class Utils {
             throw new IllegalArgumentException("must be a normal file");
         }
         try {
-            return Files.readAllBytes(file.toPath());
+            byte[] contents = Files.readAllBytes(file.toPath());
+            Trace.opened();
+            Trace.read(contents.length);
+            return contents;
         } catch (IOException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
@@ -117,14 +226,41 @@ class Utils {
                 throw
                     new IllegalArgumentException("cannot overwrite directory");
             }
+            Trace.opened();
+            if (contents.length == 1 && contents[0] instanceof byte[]) {
+                Files.write(file.toPath(), (byte[]) contents[0]);
+                Trace.written(((byte[]) contents[0]).length);
+                return;
+            }
             BufferedOutputStream str =
                 new BufferedOutputStream(Files.newOutputStream(file.toPath()));
             for (Object obj : contents) {
-                if (obj instanceof byte[]) {
-                    str.write((byte[]) obj);
-                } else {
-                    str.write(((String) obj).getBytes(StandardCharsets.UTF_8));
-                }
+                byte[] bytes = obj instanceof byte[] ? (byte[]) obj
+                    : ((String) obj).getBytes(StandardCharsets.UTF_8);
+                str.write(bytes);
+                Trace.written(bytes.length);
+            }
+            str.close();
+        } catch (IOException | ClassCastException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Append the result of concatenating the bytes in CONTENTS to FILE,
+     *  creating it as needed.  Each object in CONTENTS may be either a
+     *  String or a byte array.  Throws IllegalArgumentException in case
+     *  of problems. */
+    static void appendContents(File file, Object... contents) {
+        try {
+            BufferedOutputStream str =
+                new BufferedOutputStream(Files.newOutputStream(file.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND));
+            Trace.opened();
+            for (Object obj : contents) {
+                byte[] bytes = obj instanceof byte[] ? (byte[]) obj
+                    : ((String) obj).getBytes(StandardCharsets.UTF_8);
+                str.write(bytes);
+                Trace.written(bytes.length);
             }
             str.close();
         } catch (IOException | ClassCastException excp) {
@@ -141,6 +277,9 @@ class Utils {
                 new ObjectInputStream(new FileInputStream(file));
             T result = expectedClass.cast(in.readObject());
             in.close();
+            Trace.opened();
+            Trace.read(file.length());
+            Trace.deserialized();
             return result;
         } catch (IOException | ClassCastException
                  | ClassNotFoundException excp) {
@@ -218,6 +357,54 @@ class Utils {
 
 
 
+    /* PARALLELISM */
+
+    /** Fewest tasks worth handing to a thread pool. */
+    private static final int PARALLEL_THRESHOLD = 16;
+
+    /** Runs TASKS, on a pool with a worker per processor if there are
+     *  enough of them, and returns their results in order.  If a task
+     *  throws an unchecked exception, such as a GitletException, it is
+     *  rethrown as is; a checked exception is rethrown as an
+     *  IllegalArgumentException with the same message. */
+    static <T> List<T> parallel(List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            if (tasks.size() < PARALLEL_THRESHOLD) {
+                for (Callable<T> task : tasks) {
+                    results.add(task.call());
+                }
+                return results;
+            }
+            int n = Math.min(tasks.size(),
+                    Runtime.getRuntime().availableProcessors());
+            ExecutorService pool = Executors.newFixedThreadPool(n);
+            try {
+                for (Future<T> result : pool.invokeAll(tasks)) {
+                    results.add(result.get());
+                }
+            } finally {
+                pool.shutdown();
+            }
+            return results;
+        } catch (ExecutionException excp) {
+            throw unchecked(excp.getCause());
+        } catch (Exception excp) {
+            throw unchecked(excp);
+        }
+    }
+
+    /** returns EXCP if it is unchecked, and otherwise an
+     *  IllegalArgumentException with its message.  Errors are thrown. */
+    private static RuntimeException unchecked(Throwable excp) {
+        if (excp instanceof Error) {
+            throw (Error) excp;
+        } else if (excp instanceof RuntimeException) {
+            return (RuntimeException) excp;
+        }
+        return new IllegalArgumentException(excp.getMessage());
+    }
+
     /* MESSAGES AND ERROR REPORTING */
 
     /** Return a GitletException whose message is composed from MSG and ARGS as
@@ -0,0 +1,138 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+
+/** The working directory, whose files are named by paths relative to
+ *  it, separated by '/'.  In bulk updates of working files, writes and
+ *  deletions are spread over a pool of worker threads, so large
+ *  checkouts are not bound by the latency of one file operation at a
+ *  time.  Callers are expected to have made every conflict check before
+ *  calling apply, since files within each phase are updated in no
+ *  particular order.
+ *  @author Tracy
+ */
+class WorkTree {
+
+    /** Writes the blob whose id WRITES maps each file name to into that
+     *  working file, and deletes the working files named in DELETES.
+     *  All deletions, and the pruning of directories they leave empty,
+     *  finish before any write starts, so that a directory being pruned
+     *  never loses a file written into it, and a file can replace a
+     *  directory or a directory a file.  Every update is attempted even
+     *  if some fail.
+     * @return the reason each failed update failed, by file name; empty
+     *         if all succeeded
+     */
+    static TreeMap<String, String> apply(Map<String, String> writes,
+                                         Collection<String> deletes) {
+        List<String> names = new ArrayList<>(deletes);
+        List<Callable<String>> removals = new ArrayList<>();
+        for (String name : deletes) {
+            removals.add(() -> delete(name) ? null : "could not delete");
+        }
+        List<Callable<String>> copies = new ArrayList<>();
+        for (Map.Entry<String, String> entry : writes.entrySet()) {
+            String name = entry.getKey(), id = entry.getValue();
+            names.add(name);
+            copies.add(() -> {
+                try {
+                    checkout(name, id);
+                    return null;
+                } catch (IllegalArgumentException excp) {
+                    return excp.getMessage();
+                }
+            });
+        }
+        List<String> results;
+        Trace.Phase phase = Trace.phase("worktree-update");
+        try (phase) {
+            results = new ArrayList<>(Utils.parallel(removals));
+            results.addAll(Utils.parallel(copies));
+        }
+        TreeMap<String, String> failures = new TreeMap<>();
+        for (int i = 0; i < results.size(); i += 1) {
+            if (results.get(i) != null) {
+                failures.put(names.get(i), results.get(i));
+            }
+        }
+        return failures;
+    }
+
+    /** Writes CONTENTS, byte arrays and strings as for
+     *  Utils.writeContents, to the working file at PATH, creating any
+     *  missing parent directories. */
+    static void write(String path, Object... contents) {
+        File parent = new File(path).getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        Utils.writeContents(new File(path), contents);
+    }
+
+    /** Writes the blob with id ID to the working file at PATH, creating
+     *  any missing parent directories. */
+    static void checkout(String path, String id) {
+        File parent = new File(path).getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        Blob.copyTo(id, new File(path));
+    }
+
+    /** Deletes the working file at PATH if it exists, along with any
+     *  parent directories that are left empty.
+     * @return false iff the file could not be deleted
+     */
+    static boolean delete(String path) {
+        File file = new File(path);
+        if (file.exists() && !file.delete()) {
+            return false;
+        }
+        File dir = file.getParentFile();
+        while (dir != null && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+        return true;
+    }
+
+    /** returns the paths of all plain files below directory DIR, which is
+     *  "" for the working directory, in order.  The repository itself is
+     *  skipped, as is a gitlet directory at the top level. */
+    static TreeSet<String> files(String dir) {
+        Trace.Phase phase = Trace.phase("worktree-scan");
+        try (phase) {
+            TreeSet<String> paths = new TreeSet<>();
+            files(dir.isEmpty() ? new File(".") : new File(dir),
+                    dir.isEmpty() ? "" : dir + "/", paths);
+            return paths;
+        }
+    }
+
+    /** Adds the paths of all plain files below directory DIR, prefixed
+     *  by PREFIX, to PATHS. */
+    private static void files(File dir, String prefix, TreeSet<String> paths) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            String name = child.getName();
+            if (name.equals(".gitlet") || name.equals(".DS_Store")
+                    || prefix.isEmpty() && name.equals("gitlet")) {
+                continue;
+            }
+            if (child.isDirectory()) {
+                files(child, prefix + name + "/", paths);
+            } else if (child.isFile()) {
+                paths.add(prefix + name);
+            }
+        }
+    }
+}
@@ -3,7 +3,7 @@ from subprocess import \
      check_output, PIPE, STDOUT, DEVNULL, CalledProcessError, TimeoutExpired
 from os.path import abspath, basename, dirname, exists, join, splitext
 from getopt import getopt, GetoptError
-from os import chdir, environ, getcwd, mkdir, remove, access, W_OK
+from os import chdir, environ, getcwd, mkdir, makedirs, remove, access, W_OK
 from shutil import copyfile, rmtree
 from math import log
 
@@ -46,7 +46,8 @@ The instructions each have one of the following forms:
    T N    Set the timeout for gitlet commands in the rest of this test to N
           seconds.
    + NAME F
-          Copy the contents of src/F into a file named NAME.
+          Copy the contents of src/F into a file named NAME, creating
+          any missing parent directories.
    - NAME
           Delete the file named NAME.
    > COMMAND OPERANDS
@@ -75,6 +76,8 @@ The instructions each have one of the following forms:
           taken to be a raw Python string (as in r"VALUE").  Substitutions are
           first applied to VALUE.
 
+A NAME may be written in double quotes ("NAME") to include blanks.
+
 For each TEST.in, reports at most one error.  Without the --show option,
 simply indicates tests passed and failed.  If N is postive, also prints details
 of the first N failing tests. With --show=all, shows details of all failing
@@ -100,6 +103,14 @@ def Match(patn, s):
 def Group(n):
     return Mat.group(n)
 
+# A file name in a test line: a word, or any text in double quotes.
+NAME = r'("[^"]*"|\S+)'
+
+# Group N of the last match, a NAME, without its quotes.
+def Name(n):
+    name = Mat.group(n)
+    return name[1:-1] if name.startswith('"') else name
+
 def contents(filename):
     try:
         with open(filename) as inp:
@@ -140,6 +151,7 @@ def doDelete(name, dir):
 def doCopy(dest, src, dir):
     try:
         doDelete(dest, dir)
+        makedirs(dirname(join(dir, dest)), exist_ok=True)
         copyfile(join(src_dir, src), join(dir, dest))
     except OSError:
         raise ValueError("file {} could not be copied to {}".format(src, dest))
@@ -296,10 +308,10 @@ def doTest(test):
                     timeout = float(Group(1))
                 except:
                     ValueError("bad time: {}".format(line))
-            elif Match(r'\+\s*(\S+)\s+(\S+)', line):
-                doCopy(Group(1), Group(2), cdir)
-            elif Match(r'-\s*(\S+)', line):
-                doDelete(Group(1), cdir)
+            elif Match(r'\+\s*' + NAME + r'\s+(\S+)', line):
+                doCopy(Name(1), Group(2), cdir)
+            elif Match(r'-\s*' + NAME, line):
+                doDelete(Name(1), cdir)
             elif Match(r'>\s*(.*)', line):
                 cmnd = Group(1)
                 expected = []
@@ -325,21 +337,21 @@ def doTest(test):
                     print("ERROR ({})".format(msg))
                     reportDetails(test, included_files, line_num)
                     return False
-            elif Match(r'=\s*(\S+)\s+(\S+)', line):
-                if not correctFileOutput(Group(1), Group(2), cdir):
+            elif Match(r'=\s*' + NAME + r'\s+(\S+)', line):
+                if not correctFileOutput(Name(1), Group(2), cdir):
                     print("ERROR (file {} has incorrect content)"
-                          .format(Group(1)))
+                          .format(Name(1)))
                     reportDetails(test, included_files, line_num)
                     return False
-            elif Match(r'\*\s*(\S+)', line):
-                if fileExists(Group(1), cdir):
-                    print("ERROR (file {} present)".format(Group(1)))
+            elif Match(r'\*\s*' + NAME, line):
+                if fileExists(Name(1), cdir):
+                    print("ERROR (file {} present)".format(Name(1)))
                     reportDetails(test, included_files, line_num)
                     return False
-            elif Match(r'E\s*(\S+)', line):
-                if not fileExists(Group(1), cdir):
+            elif Match(r'E\s*' + NAME, line):
+                if not fileExists(Name(1), cdir):
                     print("ERROR (file or directory {} not present)"
-                          .format(Group(1)))
+                          .format(Name(1)))
                     reportDetails(test, included_files, line_num)
                     return False
             elif Match(r'(?s)D\s*([a-zA-Z_][a-zA-Z_0-9]*)\s*"(.*)"\s*$', line):